@@ -0,0 +1,82 @@
+package org.uacr.services.webdashboard;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BroadcastBenchmark measures a values broadcast to a number of subscribers
+ * Subscribers are split between every key and a few narrower subscriptions, and one frame is built per subscription
+ * and shared by its subscribers the way WebsocketServer shares them
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BroadcastBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	public int keys;
+
+	@Param({"0.01", "0.1", "1.0"})
+	public double changeRatio;
+
+	@Param({"1", "5", "20"})
+	public int subscribers;
+
+	private ValueSource fSource;
+	private KeyTable fKeyTable;
+	private ValueStore fValues;
+	private SubscriptionIndex fSubscriptions;
+	private Subscription[] fClients;
+	private Map<Subscription, ByteBuffer> fFrames;
+	private ValuesFrameEncoder fEncoder;
+
+	@Setup
+	public void setup() {
+		fSource = new ValueSource(keys, changeRatio);
+		fKeyTable = new KeyTable();
+		fValues = new ValueStore(fKeyTable);
+		fSubscriptions = new SubscriptionIndex(fKeyTable);
+		fClients = new Subscription[subscribers];
+		fFrames = new HashMap<>();
+		fEncoder = new ValuesFrameEncoder(fKeyTable, fValues);
+
+		fSource.update(fValues);
+
+		//Half of the subscribers see every key, the rest look at one of four groups of keys
+		for (int i = 0; i < subscribers; i++) {
+			fClients[i] = i % 2 == 0 ? fSubscriptions.getAll() : fSubscriptions.change(fSubscriptions.getAll(), Set.of("ipn_value_" + (i % 4) + "*", "ipb_*"));
+		}
+		fSubscriptions.update();
+	}
+
+	@Benchmark
+	public void broadcast(Blackhole blackhole) {
+		fSource.tick();
+		fSource.update(fValues);
+
+		fSubscriptions.update();
+		fFrames.clear();
+
+		BitSet dirty = fValues.getDirty();
+		for (Subscription subscription : fClients) {
+			//Frames are built by the same encoder a broadcast uses, once for each subscription
+			if (!fFrames.containsKey(subscription)) {
+				fFrames.put(subscription, fEncoder.encode(ValuesFrameEncoder.BINARY, dirty, subscription));
+			}
+
+			@Nullable
+			ByteBuffer frame = fFrames.get(subscription);
+
+			//Each subscriber gets its own read only view of the shared frame
+			if (frame != null) {
+				blackhole.consume(frame.asReadOnlyBuffer());
+			}
+		}
+	}
+}
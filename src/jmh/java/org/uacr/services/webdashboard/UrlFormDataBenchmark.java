@@ -0,0 +1,63 @@
+package org.uacr.services.webdashboard;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UrlFormDataBenchmark measures encoding and parsing messages of different sizes,
+ * the payload size is the number of values in the message's "values" field
+ * "append" encodes into a reused builder the way the broadcast frames are built
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UrlFormDataBenchmark {
+
+	@Param({"1", "100", "10000"})
+	public int payloadSize;
+
+	private String fValues;
+	private String fMessage;
+	private UrlFormData fReceiveFormData;
+	private StringBuilder fBuilder;
+
+	@Setup
+	public void setup() {
+		StringBuilder values = new StringBuilder();
+		for (int i = 0; i < payloadSize; i++) {
+			if (i > 0) {
+				values.append("~");
+			}
+			values.append("numeric*ipn_value_").append(i).append("*").append(String.format("%6f", i * 0.5));
+		}
+
+		fValues = values.toString();
+		fMessage = new UrlFormData().add("response", "values").add("values", fValues).getData();
+		fReceiveFormData = new UrlFormData();
+		fBuilder = new StringBuilder();
+	}
+
+	@Benchmark
+	public String encode() {
+		return new UrlFormData().add("response", "values").add("values", fValues).getData();
+	}
+
+	@Benchmark
+	public int append() {
+		fBuilder.setLength(0);
+		UrlFormData.append(fBuilder, "response", "values");
+		UrlFormData.append(fBuilder, "values", fValues);
+
+		return fBuilder.length();
+	}
+
+	@Benchmark
+	public UrlFormData parse() {
+		fReceiveFormData.clear();
+		fReceiveFormData.parse(fMessage);
+
+		return fReceiveFormData;
+	}
+}
@@ -0,0 +1,75 @@
+package org.uacr.services.webdashboard;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ValueDiffBenchmark measures one broadcast's diff of the robot's values and the encoding of the values that changed
+ * in the text, interned and binary values protocols, the frames are built by the encoder a broadcast uses
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ValueDiffBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	public int keys;
+
+	@Param({"0.01", "0.1", "1.0"})
+	public double changeRatio;
+
+	private ValueSource fSource;
+	private KeyTable fKeyTable;
+	private ValueStore fValues;
+	private ValuesFrameEncoder fEncoder;
+	//Every key is subscribed, so the whole diff is encoded
+	private Subscription fEveryKey;
+
+	@Setup
+	public void setup() {
+		fSource = new ValueSource(keys, changeRatio);
+		fKeyTable = new KeyTable();
+		fValues = new ValueStore(fKeyTable);
+		fEncoder = new ValuesFrameEncoder(fKeyTable, fValues);
+		fEveryKey = new SubscriptionIndex(fKeyTable).getAll();
+
+		//The first update finds every key, it isn't part of what is measured
+		fSource.update(fValues);
+	}
+
+	@Benchmark
+	public BitSet diff() {
+		fSource.tick();
+		fSource.update(fValues);
+
+		return fValues.getDirty();
+	}
+
+	@Benchmark
+	public void diffAndEncodeBinary(Blackhole blackhole) {
+		fSource.tick();
+		fSource.update(fValues);
+
+		blackhole.consume(fEncoder.encode(ValuesFrameEncoder.BINARY, fValues.getDirty(), fEveryKey));
+	}
+
+	@Benchmark
+	public void diffAndEncodeInterned(Blackhole blackhole) {
+		fSource.tick();
+		fSource.update(fValues);
+
+		blackhole.consume(fEncoder.encode(ValuesFrameEncoder.INTERNED, fValues.getDirty(), fEveryKey));
+	}
+
+	@Benchmark
+	public void diffAndEncodeText(Blackhole blackhole) {
+		fSource.tick();
+		fSource.update(fValues);
+
+		blackhole.consume(fEncoder.encode(ValuesFrameEncoder.TEXT, fValues.getDirty(), fEveryKey));
+	}
+}
@@ -0,0 +1,80 @@
+package org.uacr.services.webdashboard;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ValueSource stands in for the robot's InputValues and OutputValues in benchmarks,
+ * it holds the maps the broadcast reads with getAll and changes a fixed share of them every tick
+ * Every value a tick can set is boxed when the source is made, so ticking doesn't add to the allocations a benchmark measures
+ */
+
+public class ValueSource {
+
+	private static final String[] sStates = {"Idle", "Running"};
+
+	private final String[] fNames;
+	//The two values each numeric key goes between, indexed by the key's position in the names
+	private final Double[][] fNumericValues;
+	//Whether each key holds the second of its two values
+	private final boolean[] fFlipped;
+	private final Map<String, Double> fNumerics;
+	private final Map<String, Boolean> fBooleans;
+	private final Map<String, String> fStrings;
+	private final Map<String, Map<String, Double>> fVectors;
+	private final Map<String, Object> fOutputs;
+	private final int fChangesPerTick;
+	private int fNext;
+
+	//Most keys are numerics the way they are on the robot, a tenth are booleans and strings
+	public ValueSource(int keys, double changeRatio) {
+		fNames = new String[keys];
+		fNumericValues = new Double[keys][];
+		fFlipped = new boolean[keys];
+		fNumerics = new HashMap<>();
+		fBooleans = new HashMap<>();
+		fStrings = new HashMap<>();
+		fVectors = new HashMap<>();
+		fOutputs = new HashMap<>();
+		fChangesPerTick = Math.max(1, (int) Math.round(keys * changeRatio));
+		fNext = 0;
+
+		for (int i = 0; i < keys; i++) {
+			if (i % 20 == 0) {
+				fNames[i] = "ipb_flag_" + i;
+				fBooleans.put(fNames[i], false);
+			} else if (i % 20 == 1) {
+				fNames[i] = "ips_state_" + i;
+				fStrings.put(fNames[i], sStates[0]);
+			} else {
+				fNames[i] = "ipn_value_" + i;
+				fNumericValues[i] = new Double[]{i * 0.5, -i * 0.25 - 1};
+				fNumerics.put(fNames[i], fNumericValues[i][0]);
+			}
+		}
+	}
+
+	//Changes the next share of keys, going around the keys so every key changes as often as the others
+	//Each key goes back and forth between two values, so every change is seen by the diff
+	public void tick() {
+		for (int i = 0; i < fChangesPerTick; i++) {
+			int key = fNext;
+			fNext = (fNext + 1) % fNames.length;
+			fFlipped[key] = !fFlipped[key];
+
+			int value = fFlipped[key] ? 1 : 0;
+			if (fNumericValues[key] != null) {
+				fNumerics.put(fNames[key], fNumericValues[key][value]);
+			} else if (key % 20 == 0) {
+				fBooleans.put(fNames[key], fFlipped[key]);
+			} else {
+				fStrings.put(fNames[key], sStates[value]);
+			}
+		}
+	}
+
+	//Reads every value into the store the way WebsocketServer does each broadcast
+	public void update(ValueStore values) {
+		values.update(fNumerics, fBooleans, fStrings, fVectors, fOutputs);
+	}
+}
@@ -0,0 +1,77 @@
+package org.uacr.services.webdashboard.websocket;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FrameCodecBenchmark measures encoding server frames and decoding masked client frames of different payload sizes
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FrameCodecBenchmark {
+
+	@Param({"16", "1024", "65536", "524288"})
+	public int payloadSize;
+
+	private String fMessage;
+	private ByteBuffer fPayload;
+	private byte[] fClientFrame;
+	private ByteBuffer fReadBuffer;
+	private FrameCodec fCodec;
+
+	@Setup
+	public void setup() {
+		char[] message = new char[payloadSize];
+		Arrays.fill(message, 'a');
+		fMessage = new String(message);
+		fPayload = ByteBuffer.wrap(fMessage.getBytes(StandardCharsets.UTF_8));
+
+		//Client frames are masked, a browser would use a new mask for every frame
+		byte[] mask = {0x12, 0x34, 0x56, 0x78};
+		ByteBuffer frame = ByteBuffer.allocate(payloadSize + 14);
+		frame.put((byte) (0x80 | FrameCodec.TEXT));
+		if (payloadSize < 126) {
+			frame.put((byte) (0x80 | payloadSize));
+		} else if (payloadSize < 65536) {
+			frame.put((byte) (0x80 | 126));
+			frame.putShort((short) payloadSize);
+		} else {
+			frame.put((byte) (0x80 | 127));
+			frame.putLong(payloadSize);
+		}
+		frame.put(mask);
+		for (int i = 0; i < payloadSize; i++) {
+			frame.put((byte) ('a' ^ mask[i & 0x3]));
+		}
+
+		fClientFrame = Arrays.copyOf(frame.array(), frame.position());
+		fReadBuffer = ByteBuffer.allocate(fClientFrame.length);
+		fCodec = new FrameCodec(1 << 20);
+	}
+
+	@Benchmark
+	public ByteBuffer encodeText() {
+		return FrameCodec.text(fMessage);
+	}
+
+	@Benchmark
+	public ByteBuffer encodeBinary() {
+		return FrameCodec.binary(fPayload.duplicate());
+	}
+
+	@Benchmark
+	public ByteBuffer decode() throws FrameException {
+		fReadBuffer.clear();
+		fReadBuffer.put(fClientFrame);
+
+		int opcode = fCodec.decode(fReadBuffer);
+
+		return fCodec.getPayload(opcode);
+	}
+}
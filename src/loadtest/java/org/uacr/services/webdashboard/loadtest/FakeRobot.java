@@ -0,0 +1,163 @@
+package org.uacr.services.webdashboard.loadtest;
+
+import org.uacr.shared.abstractions.*;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FakeRobot stands in for the robot code, it changes a share of its values every tick from a seeded random
+ * so every run with the same options changes the same keys to the same values
+ * The robot interfaces are implemented with proxies that answer the calls WebsocketServer makes
+ * and return a default for everything else, so the tool doesn't need the rest of the robot
+ */
+
+public class FakeRobot {
+
+	//The key every tick sets to the tick number, clients measure latency from the tick they see in it
+	public static final String TICK_KEY = "ipn_loadtest_tick";
+	public static final String TICK_DISPLAY_NAME = "Tick";
+
+	private final Map<String, Double> fNumerics;
+	private final Map<String, Boolean> fBooleans;
+	private final Map<String, String> fStrings;
+	private final Map<String, Map<String, Double>> fVectors;
+	private final Map<String, Object> fOutputs;
+	private final Map<String, Object> fConfig;
+	private final String[] fNames;
+	private final Random fRandom;
+	private final int fChangesPerTick;
+
+	public FakeRobot(int keys, double changeRatio, long seed) {
+		fNumerics = new ConcurrentHashMap<>();
+		fBooleans = new ConcurrentHashMap<>();
+		fStrings = new ConcurrentHashMap<>();
+		fVectors = new ConcurrentHashMap<>();
+		fOutputs = new ConcurrentHashMap<>();
+		fConfig = new HashMap<>();
+		fNames = new String[keys];
+		fRandom = new Random(seed);
+		fChangesPerTick = Math.max(1, (int) Math.round(keys * changeRatio));
+
+		for (int i = 0; i < keys; i++) {
+			fNames[i] = "ipn_loadtest_value_" + i;
+			fNumerics.put(fNames[i], 0.0);
+		}
+		fNumerics.put(TICK_KEY, -1.0);
+
+		//The match page shows the tick so match clients can measure latency too,
+		//nothing is written to disk so runs don't depend on what earlier runs left behind
+		Map<String, Object> tickWidget = new HashMap<>();
+		tickWidget.put("type", "value");
+		tickWidget.put("display_name", TICK_DISPLAY_NAME);
+
+		Map<String, Object> matchValues = new HashMap<>();
+		matchValues.put(TICK_KEY, tickWidget);
+
+		fConfig.put("match_values", matchValues);
+		fConfig.put("log_journal", false);
+		fConfig.put("record_session", false);
+	}
+
+	//Changes the next share of values, then sets the tick
+	public void tick(long tick) {
+		for (int i = 0; i < fChangesPerTick; i++) {
+			fNumerics.put(fNames[fRandom.nextInt(fNames.length)], fRandom.nextDouble());
+		}
+
+		fNumerics.put(TICK_KEY, (double) tick);
+	}
+
+	//The robot's values are copied out the same way the shared input values are
+	public InputValues getInputValues() {
+		return proxy(InputValues.class, (name, args) -> {
+			switch (name) {
+				case "getAllNumerics":
+					return new HashMap<>(fNumerics);
+				case "getAllBooleans":
+					return new HashMap<>(fBooleans);
+				case "getAllStrings":
+					return new HashMap<>(fStrings);
+				case "getAllVectors":
+					return new HashMap<>(fVectors);
+				case "setNumeric":
+					fNumerics.put((String) args[0], ((Number) args[1]).doubleValue());
+					return null;
+				case "setString":
+					fStrings.put((String) args[0], (String) args[1]);
+					return null;
+				case "getString":
+					return fStrings.getOrDefault(args[0], "");
+				case "getVector":
+					return fVectors.getOrDefault(args[0], new HashMap<>());
+				default:
+					return null;
+			}
+		});
+	}
+
+	public OutputValues getOutputValues() {
+		return proxy(OutputValues.class, (name, args) -> name.equals("getAllOutputs") ? new HashMap<>(fOutputs) : null);
+	}
+
+	public RobotConfiguration getRobotConfiguration() {
+		return proxy(RobotConfiguration.class, (name, args) -> name.equals("getCategory") ? fConfig : null);
+	}
+
+	public EventBus getEventBus() {
+		return proxy(EventBus.class, (name, args) -> null);
+	}
+
+	public FMS getFMS() {
+		return proxy(FMS.class, (name, args) -> null);
+	}
+
+	/**
+	 * Answer handles a call to a proxy, returning null uses the default for the method's return type
+	 */
+
+	private interface Answer {
+
+		@Nullable
+		Object answer(String name, Object[] args);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, Answer answer) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "Fake" + type.getSimpleName();
+			}
+
+			@Nullable
+			Object result = answer.answer(method.getName(), args != null ? args : new Object[0]);
+
+			return result != null ? result : getDefault(method.getReturnType());
+		});
+	}
+
+	@Nullable
+	private static Object getDefault(Class<?> type) {
+		if (type == boolean.class) return false;
+		if (type == int.class) return 0;
+		if (type == long.class) return 0L;
+		if (type == double.class) return 0.0;
+		if (type == float.class) return 0.0f;
+		if (type == short.class) return (short) 0;
+		if (type == byte.class) return (byte) 0;
+		if (type == char.class) return (char) 0;
+		if (type == String.class) return "";
+		if (type == Map.class) return new HashMap<>();
+		if (type == List.class) return new ArrayList<>();
+		if (type == Set.class) return new HashSet<>();
+
+		return null;
+	}
+}
@@ -0,0 +1,117 @@
+package org.uacr.services.webdashboard.loadtest;
+
+import org.uacr.services.webdashboard.LatencyHistogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LoadClient is one dashboard page connected to the server, frames it sends are masked like a browser's
+ * Every message is searched for the newest tick in it, and the time since the tick was made is recorded as its latency
+ */
+
+public class LoadClient implements WebSocket.Listener {
+
+	private final String fPath;
+	private final String fTickMarker;
+	private final long[] fTickTimes;
+	private final LatencyHistogram fLatency;
+	private final AtomicLong fFrames;
+	private final AtomicLong fBytes;
+	private final StringBuilder fMessage;
+	private long fLastTick;
+
+	//The tick times are shared with the generator, indexed by the tick masked to the array's length
+	public LoadClient(String path, long[] tickTimes, LatencyHistogram latency) {
+		fPath = path;
+		fTickTimes = tickTimes;
+		fLatency = latency;
+		fFrames = new AtomicLong(0);
+		fBytes = new AtomicLong(0);
+		fMessage = new StringBuilder();
+		fLastTick = -1;
+
+		//What comes right before the tick in each page's messages
+		switch (path) {
+			case "/match":
+				fTickMarker = FakeRobot.TICK_DISPLAY_NAME + "*$#$*";
+				break;
+			case "/log":
+				fTickMarker = LoadTest.LOG_MESSAGE;
+				break;
+			default:
+				fTickMarker = FakeRobot.TICK_KEY + "*";
+		}
+	}
+
+	public void connect(HttpClient client, int port) throws Exception {
+		client.newWebSocketBuilder()
+				.buildAsync(URI.create("ws://localhost:" + port + fPath), this)
+				.get(10, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+		fMessage.append(data);
+
+		if (last) {
+			long receivedTime = System.nanoTime();
+
+			fFrames.incrementAndGet();
+			fBytes.addAndGet(fMessage.length());
+
+			long tick = findNewestTick();
+			if (tick > fLastTick) {
+				fLastTick = tick;
+				fLatency.record(receivedTime - fTickTimes[(int) (tick & (fTickTimes.length - 1))]);
+			}
+
+			fMessage.setLength(0);
+		}
+
+		webSocket.request(1);
+		return null;
+	}
+
+	//The last tick in the message, or -1 if it doesn't have one
+	private long findNewestTick() {
+		int start = fMessage.lastIndexOf(fTickMarker);
+
+		if (start < 0) {
+			return -1;
+		}
+
+		//The number runs until the first character that can't be part of it
+		long tick = 0;
+		boolean digits = false;
+		for (int i = start + fTickMarker.length(); i < fMessage.length(); i++) {
+			char c = fMessage.charAt(i);
+
+			if (c >= '0' && c <= '9') {
+				tick = tick * 10 + (c - '0');
+				digits = true;
+			} else if (c != ' ' || digits) {
+				break;
+			}
+		}
+
+		return digits ? tick : -1;
+	}
+
+	public String getPath() {
+		return fPath;
+	}
+
+	public long getFrames() {
+		return fFrames.get();
+	}
+
+	//Characters received, the same as bytes for the ascii the pages are sent
+	public long getBytes() {
+		return fBytes.get();
+	}
+}
@@ -0,0 +1,194 @@
+package org.uacr.services.webdashboard.loadtest;
+
+import org.uacr.services.webdashboard.LatencyHistogram;
+import org.uacr.services.webdashboard.WebsocketServer;
+import org.uacr.utilities.logging.LogManager;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LoadTest runs a WebsocketServer against a fake robot and a number of headless dashboard pages,
+ * then reports the latency from a value changing to each page receiving it, the throughput, and the server's cpu time
+ *
+ * Options are given as "--name value", every option has a default so a run with no options is always the same test:
+ * --values, --match and --log are the number of pages of each kind, --keys and --change are the number of values
+ * and the share of them changed every tick, --rate is ticks per second, --duration and --warmup are in seconds,
+ * --seed picks which values change, --port is the server's port and --out also writes the report to a file
+ * The report is one "name value" line per result so two runs can be compared with diff
+ */
+
+public class LoadTest {
+
+	//Logged every tick followed by the tick number so log pages can measure latency
+	public static final String LOG_MESSAGE = "loadtest tick ";
+
+	//Tick times kept for measuring latency, a tick this many ticks old has been overwritten
+	private static final int sTickHistory = 1 << 16;
+
+	public static void main(String[] arguments) throws Exception {
+		Map<String, String> options = new LinkedHashMap<>();
+		options.put("values", "20");
+		options.put("match", "2");
+		options.put("log", "1");
+		options.put("keys", "5000");
+		options.put("change", "0.1");
+		options.put("rate", "60");
+		options.put("duration", "30");
+		options.put("warmup", "5");
+		options.put("seed", "1619");
+		options.put("port", "5899");
+		options.put("out", "");
+
+		for (int i = 0; i + 1 < arguments.length; i += 2) {
+			String name = arguments[i].replaceFirst("^--", "");
+
+			if (!options.containsKey(name)) {
+				throw new IllegalArgumentException("Unknown option " + arguments[i]);
+			}
+
+			options.put(name, arguments[i + 1]);
+		}
+
+		int port = Integer.parseInt(options.get("port"));
+		double rate = Double.parseDouble(options.get("rate"));
+		long tickInterval = Math.round(1000000000 / rate);
+
+		FakeRobot robot = new FakeRobot(Integer.parseInt(options.get("keys")), Double.parseDouble(options.get("change")), Long.parseLong(options.get("seed")));
+		WebsocketServer server = new WebsocketServer(port, robot.getEventBus(), robot.getFMS(), robot.getInputValues(), robot.getOutputValues(), robot.getRobotConfiguration());
+		server.initialize();
+
+		long[] tickTimes = new long[sTickHistory];
+		Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+		List<LoadClient> clients = new ArrayList<>();
+		HttpClient httpClient = HttpClient.newHttpClient();
+
+		for (String path : new String[]{"values", "match", "log"}) {
+			LatencyHistogram latency = new LatencyHistogram();
+			latencies.put(path, latency);
+
+			for (int i = 0; i < Integer.parseInt(options.get(path)); i++) {
+				LoadClient client = new LoadClient("/" + path, tickTimes, latency);
+				client.connect(httpClient, port);
+				clients.add(client);
+			}
+		}
+
+		long warmupTicks = Math.round(Double.parseDouble(options.get("warmup")) * rate);
+		long ticks = warmupTicks + Math.round(Double.parseDouble(options.get("duration")) * rate);
+		long lateTicks = 0;
+
+		Map<String, Long> startFrames = new HashMap<>();
+		Map<String, Long> startBytes = new HashMap<>();
+		long startCpuTime = 0;
+		long startTime = 0;
+
+		long nextTickTime = System.nanoTime();
+		for (long tick = 0; tick < ticks; tick++) {
+			//Measuring starts after the warmup so the jit and the first snapshots aren't part of the results
+			if (tick == warmupTicks) {
+				for (LatencyHistogram latency : latencies.values()) {
+					latency.reset();
+				}
+				for (LoadClient client : clients) {
+					startFrames.merge(client.getPath(), client.getFrames(), Long::sum);
+					startBytes.merge(client.getPath(), client.getBytes(), Long::sum);
+				}
+				startCpuTime = getServerCpuTime();
+				startTime = System.nanoTime();
+				lateTicks = 0;
+			}
+
+			long now = System.nanoTime();
+			if (now < nextTickTime) {
+				LockSupport.parkNanos(nextTickTime - now);
+			} else if (now - nextTickTime > tickInterval) {
+				lateTicks++;
+			}
+			nextTickTime += tickInterval;
+
+			robot.tick(tick);
+			tickTimes[(int) (tick & (sTickHistory - 1))] = System.nanoTime();
+			server.log(LogManager.Level.INFO, LOG_MESSAGE + tick);
+			server.broadcastToWebDashboard();
+		}
+
+		//Gives the last ticks time to arrive
+		Thread.sleep(500);
+
+		double seconds = (System.nanoTime() - startTime) / 1000000000.0;
+		long cpuTime = getServerCpuTime() - startCpuTime;
+
+		StringBuilder report = new StringBuilder();
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			if (!option.getKey().equals("out")) {
+				report.append("option_").append(option.getKey()).append(" ").append(option.getValue()).append("\n");
+			}
+		}
+
+		for (Map.Entry<String, LatencyHistogram> latency : latencies.entrySet()) {
+			String path = latency.getKey();
+
+			long frames = -startFrames.getOrDefault("/" + path, 0L);
+			long bytes = -startBytes.getOrDefault("/" + path, 0L);
+			for (LoadClient client : clients) {
+				if (client.getPath().equals("/" + path)) {
+					frames += client.getFrames();
+					bytes += client.getBytes();
+				}
+			}
+
+			LatencyHistogram histogram = latency.getValue();
+			append(report, path + "_latency_p50_ms", histogram.getValueAtPercentile(50) / 1000000.0);
+			append(report, path + "_latency_p90_ms", histogram.getValueAtPercentile(90) / 1000000.0);
+			append(report, path + "_latency_p99_ms", histogram.getValueAtPercentile(99) / 1000000.0);
+			append(report, path + "_latency_p999_ms", histogram.getValueAtPercentile(99.9) / 1000000.0);
+			append(report, path + "_latency_max_ms", histogram.getMax() / 1000000.0);
+			append(report, path + "_ticks_measured", histogram.getCount());
+			append(report, path + "_frames_per_second", frames / seconds);
+			append(report, path + "_kilobytes_per_second", bytes / seconds / 1024);
+		}
+
+		append(report, "server_cpu_ms", cpuTime / 1000000.0);
+		append(report, "server_cpu_percent", cpuTime / 1000000000.0 / seconds * 100);
+		append(report, "late_ticks", lateTicks);
+
+		System.out.print(report);
+
+		if (!options.get("out").isEmpty()) {
+			Files.write(Paths.get(options.get("out")), report.toString().getBytes(StandardCharsets.UTF_8));
+		}
+
+		server.stop();
+		System.exit(0);
+	}
+
+	private static void append(StringBuilder report, String name, double value) {
+		report.append(name).append(" ").append(String.format(Locale.ROOT, "%.3f", value)).append("\n");
+	}
+
+	private static void append(StringBuilder report, String name, long value) {
+		report.append(name).append(" ").append(value).append("\n");
+	}
+
+	//The cpu time used by the server's selector and broadcast threads, in nanoseconds
+	private static long getServerCpuTime() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long cpuTime = 0;
+
+		for (ThreadInfo thread : threads.getThreadInfo(threads.getAllThreadIds())) {
+			if (thread != null && (thread.getThreadName().startsWith("WebSocketServer") || thread.getThreadName().startsWith("WebDashboard"))) {
+				cpuTime += Math.max(0, threads.getThreadCpuTime(thread.getThreadId()));
+			}
+		}
+
+		return cpuTime;
+	}
+}
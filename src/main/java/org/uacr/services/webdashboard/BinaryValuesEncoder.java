@@ -0,0 +1,154 @@
+package org.uacr.services.webdashboard;
+
+import org.uacr.services.webdashboard.websocket.FrameCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * BinaryValuesEncoder writes values page updates in the binary sub-protocol
+ *
+ * A message is one message type byte followed by records until the end of the frame,
+ * each record is a record type byte, the key id as a varint, then the value,
+ * numbers are big endian doubles, booleans are one byte and text is a varint byte length followed by UTF-8
+ * A define record carries the key name for an id and is sent once per connection before the id is used
+ */
+
+public class BinaryValuesEncoder {
+
+	public static final String PROTOCOL = "uacr-values-binary";
+
+	public static final byte VALUES_MESSAGE = 1;
+
+	public static final byte DEFINE = 0;
+	public static final byte NUMERIC = 1;
+	public static final byte BOOLEAN = 2;
+	public static final byte STRING = 3;
+	public static final byte VECTOR = 4;
+	public static final byte OUTPUT_NUMERIC = 5;
+	public static final byte OUTPUT_BOOLEAN = 6;
+	public static final byte OUTPUT_STRING = 7;
+
+	private ByteBuffer fBuffer;
+
+	public BinaryValuesEncoder() {
+		fBuffer = ByteBuffer.allocate(4096);
+
+		reset();
+	}
+
+	//Starts a new message
+	public void reset() {
+		fBuffer.clear();
+		fBuffer.put(VALUES_MESSAGE);
+	}
+
+	//Whether any records have been written since the last reset
+	public boolean isEmpty() {
+		return fBuffer.position() <= 1;
+	}
+
+	public void putDefine(int id, String name) {
+		putHeader(DEFINE, id);
+		putText(name);
+	}
+
+	public void putNumeric(int id, double value) {
+		putHeader(NUMERIC, id);
+		ensureCapacity(8);
+		fBuffer.putDouble(value);
+	}
+
+	public void putBoolean(int id, boolean value) {
+		putHeader(BOOLEAN, id);
+		ensureCapacity(1);
+		fBuffer.put((byte) (value ? 1 : 0));
+	}
+
+	public void putString(int id, String value) {
+		putHeader(STRING, id);
+		putText(value);
+	}
+
+	public void putVector(int id, Map<String, Double> value) {
+		putHeader(VECTOR, id);
+		putVarInt(value.size());
+
+		for (Map.Entry<String, Double> entry : value.entrySet()) {
+			putText(entry.getKey());
+			ensureCapacity(8);
+			fBuffer.putDouble(entry.getValue());
+		}
+	}
+
+	//Outputs can hold any type so they are sent as numbers or booleans when possible and as text otherwise
+	public void putOutput(int id, Object value) {
+		if (value instanceof Number) {
+			putHeader(OUTPUT_NUMERIC, id);
+			ensureCapacity(8);
+			fBuffer.putDouble(((Number) value).doubleValue());
+		} else if (value instanceof Boolean) {
+			putHeader(OUTPUT_BOOLEAN, id);
+			ensureCapacity(1);
+			fBuffer.put((byte) ((Boolean) value ? 1 : 0));
+		} else {
+			putHeader(OUTPUT_STRING, id);
+			putText(String.valueOf(value));
+		}
+	}
+
+	//The records written since the last reset without the message type, valid until the next reset
+	public ByteBuffer getRecords() {
+		ByteBuffer records = fBuffer.duplicate();
+		records.flip();
+		records.position(1);
+
+		return records;
+	}
+
+	//Frames the records written since the last reset as one binary websocket message
+	public ByteBuffer toFrame() {
+		ByteBuffer payload = fBuffer.duplicate();
+		payload.flip();
+
+		return FrameCodec.binary(payload);
+	}
+
+	private void putHeader(byte type, int id) {
+		ensureCapacity(1);
+		fBuffer.put(type);
+		putVarInt(id);
+	}
+
+	private void putText(String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+		putVarInt(bytes.length);
+		ensureCapacity(bytes.length);
+		fBuffer.put(bytes);
+	}
+
+	//Unsigned LEB128, ids and lengths under 128 take a single byte
+	private void putVarInt(int value) {
+		ensureCapacity(5);
+
+		while ((value & ~0x7F) != 0) {
+			fBuffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		fBuffer.put((byte) value);
+	}
+
+	private void ensureCapacity(int bytes) {
+		if (fBuffer.remaining() >= bytes) {
+			return;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(Math.max(fBuffer.capacity() * 2, fBuffer.position() + bytes));
+		fBuffer.flip();
+		buffer.put(fBuffer);
+		fBuffer = buffer;
+	}
+}
@@ -0,0 +1,117 @@
+package org.uacr.services.webdashboard;
+
+import org.uacr.utilities.logging.LogManager;
+import org.uacr.utilities.logging.Logger;
+
+import javax.annotation.Nullable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * BroadcastWorker runs the webdashboard broadcasts on their own thread so requesting one takes the same short time
+ * no matter how many clients are connected
+ * Requests made while a broadcast is running are merged into the next one,
+ * and tasks from other threads are run on the worker between broadcasts so client state is only touched by one thread
+ */
+
+public class BroadcastWorker {
+
+	private static final Logger sLogger = LogManager.getLogger(BroadcastWorker.class);
+
+	private final Runnable fBroadcast;
+	private final Queue<Runnable> fTasks;
+	private final AtomicBoolean fRequested;
+	private final AtomicLong fMergedRequests;
+	@Nullable
+	private volatile Thread fThread;
+
+	public BroadcastWorker(Runnable broadcast) {
+		fBroadcast = broadcast;
+		fTasks = new ConcurrentLinkedQueue<>();
+		fRequested = new AtomicBoolean(false);
+		fMergedRequests = new AtomicLong(0);
+	}
+
+	public void start() {
+		if (fThread != null) {
+			return;
+		}
+
+		Thread thread = new Thread(this::run, "WebDashboard - Broadcast");
+		thread.setDaemon(true);
+		fThread = thread;
+		thread.start();
+	}
+
+	public void stop() {
+		@Nullable
+		Thread thread = fThread;
+		fThread = null;
+
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	//Called by the service every frame, only wakes the worker
+	public void requestBroadcast() {
+		if (fRequested.getAndSet(true)) {
+			fMergedRequests.incrementAndGet();
+		}
+
+		wake();
+	}
+
+	//Runs the task on the worker thread before the next broadcast
+	public void execute(Runnable task) {
+		fTasks.add(task);
+
+		wake();
+	}
+
+	//The number of requests that came in while an earlier one was still waiting to run
+	public long getMergedRequests() {
+		return fMergedRequests.get();
+	}
+
+	private void wake() {
+		@Nullable
+		Thread thread = fThread;
+
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	private void run() {
+		while (!Thread.currentThread().isInterrupted()) {
+			if (fTasks.isEmpty() && !fRequested.get()) {
+				LockSupport.park(this);
+				continue;
+			}
+
+			@Nullable
+			Runnable task;
+			while ((task = fTasks.poll()) != null) {
+				try {
+					task.run();
+				} catch (Exception e) {
+					sLogger.error(e);
+				}
+			}
+
+			if (fRequested.getAndSet(false)) {
+				try {
+					fBroadcast.run();
+				} catch (Exception e) {
+					sLogger.error(e);
+				}
+			}
+		}
+
+		sLogger.debug("Broadcast worker shutting down");
+	}
+}
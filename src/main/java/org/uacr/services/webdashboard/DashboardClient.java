@@ -0,0 +1,96 @@
+package org.uacr.services.webdashboard;
+
+import org.uacr.services.webdashboard.websocket.WebSocket;
+
+/**
+ * DashboardClient holds the state the broadcasts keep for each connected /values or /match socket
+ */
+
+public class DashboardClient {
+
+	//Text protocol where each key name is sent once and later values refer to it by id
+	public static final String INTERNED_PROTOCOL = "uacr-interned";
+
+	private final WebSocket fSocket;
+	private final boolean fBinary;
+	private final boolean fInterned;
+	private int fDefinedKeys;
+	private Subscription fSubscription;
+	private RateGroup fRateGroup;
+	private boolean fResync;
+
+	public DashboardClient(WebSocket socket, Subscription subscription, RateGroup rateGroup) {
+		fSocket = socket;
+		fBinary = BinaryValuesEncoder.PROTOCOL.equals(socket.getProtocol());
+		fInterned = INTERNED_PROTOCOL.equals(socket.getProtocol());
+		fDefinedKeys = 0;
+		fSubscription = subscription;
+		fRateGroup = rateGroup;
+		fResync = false;
+	}
+
+	public WebSocket getSocket() {
+		return fSocket;
+	}
+
+	//Whether the client negotiated the binary values protocol
+	public boolean isBinary() {
+		return fBinary;
+	}
+
+	//Whether the client negotiated the interned text protocol
+	public boolean isInterned() {
+		return fInterned;
+	}
+
+	//The number of key ids, starting from 0, that the client has been sent the names of
+	public int getDefinedKeys() {
+		return fDefinedKeys;
+	}
+
+	public void setDefinedKeys(int definedKeys) {
+		fDefinedKeys = definedKeys;
+	}
+
+	//The keys the client is sent values for
+	public Subscription getSubscription() {
+		return fSubscription;
+	}
+
+	//Changing the subscription sends the client every current value it now subscribes to
+	public void setSubscription(Subscription subscription) {
+		if (subscription != fSubscription) {
+			fSubscription = subscription;
+			fResync = true;
+		}
+	}
+
+	//The group of clients with the same update rate that the client is sent changes with
+	public RateGroup getRateGroup() {
+		return fRateGroup;
+	}
+
+	//Changes collected by the old group aren't in the new one, so changing groups sends the client every current value
+	public void setRateGroup(RateGroup rateGroup) {
+		if (rateGroup != fRateGroup) {
+			fRateGroup = rateGroup;
+			fResync = true;
+		}
+	}
+
+	//Whether the client needs every current value instead of just the changes
+	public boolean isResync() {
+		return fResync;
+	}
+
+	public void setResync(boolean resync) {
+		fResync = resync;
+	}
+
+	//Returns whether the client needs every current value instead of just the changes, clearing the request
+	public boolean takeResync() {
+		boolean resync = fResync;
+		fResync = false;
+		return resync;
+	}
+}
@@ -0,0 +1,174 @@
+package org.uacr.services.webdashboard;
+
+import org.uacr.shared.abstractions.InputValues;
+
+import javax.annotation.Nullable;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DashboardMetrics measures the web dashboard itself so a slow frame can be told apart from slow robot code
+ * Times are recorded in nanoseconds into histograms from any thread, once a second the last interval is published
+ * as "ipn_webdashboard_" numerics and as the plain text served at "/metrics"
+ */
+
+public class DashboardMetrics {
+
+	private final Metric fBroadcastTime;
+	private final Metric fDiffTime;
+	private final Metric fEncodeTime;
+	private final Metric fWriteLatency;
+	private final Metric fQueueDepth;
+	private final Metric[] fMetrics;
+	private final Map<String, Topic> fTopics;
+	private final StringBuilder fText;
+	private long fLastPublishTime;
+	private volatile String fPublishedText;
+
+	public DashboardMetrics() {
+		fBroadcastTime = new Metric("broadcast", "ms", 1000000.0);
+		fDiffTime = new Metric("diff", "ms", 1000000.0);
+		fEncodeTime = new Metric("encode", "ms", 1000000.0);
+		fWriteLatency = new Metric("write_latency", "ms", 1000000.0);
+		fQueueDepth = new Metric("queue_depth", "bytes", 1);
+		fMetrics = new Metric[]{fBroadcastTime, fDiffTime, fEncodeTime, fWriteLatency, fQueueDepth};
+		fTopics = new ConcurrentHashMap<>();
+		fText = new StringBuilder();
+		fLastPublishTime = System.nanoTime();
+		fPublishedText = "";
+	}
+
+	//The whole broadcast, in nanoseconds
+	public void recordBroadcastTime(long time) {
+		fBroadcastTime.fLive.record(time);
+	}
+
+	//Comparing the robot's values against the last broadcast, in nanoseconds
+	public void recordDiffTime(long time) {
+		fDiffTime.fLive.record(time);
+	}
+
+	//Building and queuing the frames for every page, in nanoseconds
+	public void recordEncodeTime(long time) {
+		fEncodeTime.fLive.record(time);
+	}
+
+	//The bytes waiting to be written to one socket, sampled every broadcast
+	public void recordQueueDepth(long bytes) {
+		fQueueDepth.fLive.record(bytes);
+	}
+
+	//Called on the selector thread for every frame written, frames without a topic are counted as "other"
+	public void recordWrite(@Nullable String topic, int bytes, long latency) {
+		fWriteLatency.fLive.record(latency);
+
+		Topic counters = fTopics.computeIfAbsent(topic != null ? topic : "other", Topic::new);
+		counters.fFrames.incrementAndGet();
+		counters.fBytes.addAndGet(bytes);
+	}
+
+	//Publishes the interval since the last call, called once a second by the broadcast worker
+	public void publish(InputValues inputValues, long droppedLogs) {
+		long now = System.nanoTime();
+		double seconds = Math.max(now - fLastPublishTime, 1) / 1000000000.0;
+		fLastPublishTime = now;
+
+		fText.setLength(0);
+		fText.append("# web dashboard metrics over the last ").append(format(seconds * 1000)).append(" ms\n");
+
+		for (Metric metric : fMetrics) {
+			metric.fInterval.reset();
+			metric.fLive.moveTo(metric.fInterval);
+
+			publish(inputValues, metric, "p50", metric.fInterval.getValueAtPercentile(50));
+			publish(inputValues, metric, "p99", metric.fInterval.getValueAtPercentile(99));
+			publish(inputValues, metric, "max", metric.fInterval.getMax());
+			inputValues.setNumeric("ipn_webdashboard_" + metric.fName + "_count", metric.fInterval.getCount());
+			fText.append("webdashboard_").append(metric.fName).append("_count ").append(metric.fInterval.getCount()).append("\n");
+		}
+
+		for (Topic topic : fTopics.values()) {
+			long frames = topic.fFrames.get();
+			long bytes = topic.fBytes.get();
+			double framesPerSecond = (frames - topic.fPublishedFrames) / seconds;
+			double bytesPerSecond = (bytes - topic.fPublishedBytes) / seconds;
+			topic.fPublishedFrames = frames;
+			topic.fPublishedBytes = bytes;
+
+			inputValues.setNumeric("ipn_webdashboard_" + topic.fName + "_frames_per_second", framesPerSecond);
+			inputValues.setNumeric("ipn_webdashboard_" + topic.fName + "_bytes_per_second", bytesPerSecond);
+
+			fText.append("webdashboard_frames_total{topic=\"").append(topic.fName).append("\"} ").append(frames).append("\n");
+			fText.append("webdashboard_bytes_total{topic=\"").append(topic.fName).append("\"} ").append(bytes).append("\n");
+			fText.append("webdashboard_frames_per_second{topic=\"").append(topic.fName).append("\"} ").append(format(framesPerSecond)).append("\n");
+			fText.append("webdashboard_bytes_per_second{topic=\"").append(topic.fName).append("\"} ").append(format(bytesPerSecond)).append("\n");
+		}
+
+		inputValues.setNumeric("ipn_webdashboard_dropped_logs", droppedLogs);
+		fText.append("webdashboard_dropped_logs_total ").append(droppedLogs).append("\n");
+
+		fPublishedText = fText.toString();
+	}
+
+	private void publish(InputValues inputValues, Metric metric, String statistic, long value) {
+		double scaled = value / metric.fScale;
+
+		inputValues.setNumeric("ipn_webdashboard_" + metric.fName + "_" + statistic + "_" + metric.fUnit, scaled);
+		fText.append("webdashboard_").append(metric.fName).append("_").append(metric.fUnit)
+				.append("{statistic=\"").append(statistic).append("\"} ").append(format(scaled)).append("\n");
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+	//The text published for the last interval, read by the http server
+	public String getText() {
+		return fPublishedText;
+	}
+
+	/**
+	 * Metric is a histogram being recorded and the copy of its last interval that was published
+	 */
+
+	private static class Metric {
+
+		private final String fName;
+		private final String fUnit;
+		//Recorded values are divided by this when published
+		private final double fScale;
+		private final LatencyHistogram fLive;
+		private final LatencyHistogram fInterval;
+
+		private Metric(String name, String unit, double scale) {
+			fName = name;
+			fUnit = unit;
+			fScale = scale;
+			fLive = new LatencyHistogram();
+			fInterval = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Topic counts the frames and bytes written for one websocket topic
+	 */
+
+	private static class Topic {
+
+		private final String fName;
+		private final AtomicLong fFrames;
+		private final AtomicLong fBytes;
+		private long fPublishedFrames;
+		private long fPublishedBytes;
+
+		private Topic(String name) {
+			fName = name;
+			fFrames = new AtomicLong(0);
+			fBytes = new AtomicLong(0);
+			fPublishedFrames = 0;
+			fPublishedBytes = 0;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package org.uacr.services.webdashboard;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * KeyDefinitions sends clients the names of the key ids they haven't been told about yet
+ * Clients that are missing the same range of ids share one encoded frame
+ */
+
+public class KeyDefinitions {
+
+	private final KeyTable fKeyTable;
+	private final Encoder fEncoder;
+	private final Map<Integer, ByteBuffer> fFrames;
+	private int fFramesSize;
+
+	public KeyDefinitions(KeyTable keyTable, Encoder encoder) {
+		fKeyTable = keyTable;
+		fEncoder = encoder;
+		fFrames = new HashMap<>();
+		fFramesSize = 0;
+	}
+
+	//Sends the client a frame defining every id it doesn't know, queued under the topic of the values that use them
+	public void send(DashboardClient client, String topic) {
+		int definedKeys = client.getDefinedKeys();
+		int size = fKeyTable.size();
+
+		if (definedKeys >= size) {
+			return;
+		}
+
+		//Cached frames only cover the keys that existed when they were made
+		if (fFramesSize != size) {
+			fFrames.clear();
+			fFramesSize = size;
+		}
+
+		ByteBuffer frame = fFrames.get(definedKeys);
+
+		if (frame == null) {
+			frame = fEncoder.encode(fKeyTable, definedKeys, size);
+			fFrames.put(definedKeys, frame);
+		}
+
+		client.getSocket().sendFrame(frame, topic);
+		client.setDefinedKeys(size);
+	}
+
+	public interface Encoder {
+
+		//Encodes a frame defining the names of the ids from start up to but not including end
+		ByteBuffer encode(KeyTable keyTable, int start, int end);
+	}
+}
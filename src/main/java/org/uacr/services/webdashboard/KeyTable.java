@@ -0,0 +1,51 @@
+package org.uacr.services.webdashboard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * KeyTable assigns every value name a small, stable integer id
+ * Ids are handed out in order starting at 0 and are never reused,
+ * so a client that knows the first n names can be sent just the names added after them
+ */
+
+public class KeyTable {
+
+	private final Map<String, Integer> fIds;
+	private final List<String> fNames;
+
+	public KeyTable() {
+		fIds = new HashMap<>();
+		fNames = new ArrayList<>();
+	}
+
+	//Returns the id of the name, assigning the next id if the name hasn't been seen before
+	public int getId(String name) {
+		Integer id = fIds.get(name);
+
+		if (id == null) {
+			id = fNames.size();
+			fIds.put(name, id);
+			fNames.add(name);
+		}
+
+		return id;
+	}
+
+	//Returns the id of the name, or -1 if the name hasn't been seen
+	public int findId(String name) {
+		Integer id = fIds.get(name);
+
+		return id == null ? -1 : id;
+	}
+
+	public String getName(int id) {
+		return fNames.get(id);
+	}
+
+	public int size() {
+		return fNames.size();
+	}
+}
@@ -0,0 +1,133 @@
+package org.uacr.services.webdashboard;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram counts values into log-linear buckets the way an HDR histogram does,
+ * each power of two is split into 32 buckets so a percentile is within about 3% of the real value
+ * The buckets are allocated up front, so recording a value never allocates and can be done from any thread
+ */
+
+public class LatencyHistogram {
+
+	private static final int sSubBucketBits = 5;
+	private static final int sSubBuckets = 1 << sSubBucketBits;
+	//Values below this each have their own bucket, every power of two above it is split into sub buckets
+	private static final int sLinearBuckets = 2 * sSubBuckets;
+	private static final int sBuckets = sLinearBuckets + (63 - (sSubBucketBits + 1)) * sSubBuckets;
+
+	private final AtomicLongArray fCounts;
+	private final AtomicLong fCount;
+	private final AtomicLong fSum;
+	private final AtomicLong fMax;
+
+	public LatencyHistogram() {
+		fCounts = new AtomicLongArray(sBuckets);
+		fCount = new AtomicLong(0);
+		fSum = new AtomicLong(0);
+		fMax = new AtomicLong(0);
+	}
+
+	//Counts a value, negative values are counted as 0
+	public void record(long value) {
+		value = Math.max(value, 0);
+
+		fCounts.incrementAndGet(getIndex(value));
+		fCount.incrementAndGet();
+		fSum.addAndGet(value);
+
+		long max = fMax.get();
+		while (value > max && !fMax.compareAndSet(max, value)) {
+			max = fMax.get();
+		}
+	}
+
+	//Moves every count into the other histogram and empties this one, so an interval can be read while recording continues
+	//Values recorded while moving end up in one interval or the other
+	public void moveTo(LatencyHistogram histogram) {
+		for (int i = 0; i < sBuckets; i++) {
+			long count = fCounts.getAndSet(i, 0);
+
+			if (count != 0) {
+				histogram.fCounts.addAndGet(i, count);
+			}
+		}
+
+		histogram.fCount.addAndGet(fCount.getAndSet(0));
+		histogram.fSum.addAndGet(fSum.getAndSet(0));
+
+		long max = fMax.getAndSet(0);
+		if (max > histogram.fMax.get()) {
+			histogram.fMax.set(max);
+		}
+	}
+
+	public void reset() {
+		for (int i = 0; i < sBuckets; i++) {
+			fCounts.set(i, 0);
+		}
+
+		fCount.set(0);
+		fSum.set(0);
+		fMax.set(0);
+	}
+
+	//The largest value the bucket holding the percentile can hold, or 0 if nothing was recorded
+	public long getValueAtPercentile(double percentile) {
+		long count = fCount.get();
+		if (count == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+
+		for (int i = 0; i < sBuckets; i++) {
+			seen += fCounts.get(i);
+
+			if (seen >= target) {
+				return Math.min(getHighestValue(i), fMax.get());
+			}
+		}
+
+		return fMax.get();
+	}
+
+	public long getCount() {
+		return fCount.get();
+	}
+
+	public long getMax() {
+		return fMax.get();
+	}
+
+	public double getMean() {
+		long count = fCount.get();
+
+		return count == 0 ? 0 : (double) fSum.get() / count;
+	}
+
+	private static int getIndex(long value) {
+		if (value < sLinearBuckets) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - sSubBucketBits;
+
+		return sLinearBuckets + (exponent - sSubBucketBits - 1) * sSubBuckets + (int) ((value >>> shift) - sSubBuckets);
+	}
+
+	private static long getHighestValue(int index) {
+		if (index < sLinearBuckets) {
+			return index;
+		}
+
+		int exponent = (index - sLinearBuckets) / sSubBuckets + sSubBucketBits + 1;
+		long subBucket = (index - sLinearBuckets) % sSubBuckets + sSubBuckets;
+		int shift = exponent - sSubBucketBits;
+
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
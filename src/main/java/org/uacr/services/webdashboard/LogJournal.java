@@ -0,0 +1,295 @@
+package org.uacr.services.webdashboard;
+
+import org.uacr.utilities.logging.LogManager;
+import org.uacr.utilities.logging.Logger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * LogJournal writes every log message to memory mapped segment files so a whole session can be read back after a match
+ * Segments are a fixed size and a new one is started when the current one is full, the oldest segments are deleted once there are too many
+ * Each boot writes its segments to a new session directory, and every segment on disk is listed in the index
+ * Every segment keeps a read only view of its file that is mapped when it is written or found, so reading one never opens a file
+ *
+ * Segment layout, big endian:
+ * header - int magic, int version, long first sequence, long first time, int end, int record count
+ * record - int message length, byte level ordinal, long time, utf-8 message
+ */
+
+public class LogJournal {
+
+	private static final Logger sLogger = LogManager.getLogger(LogJournal.class);
+	private static final int sMagic = 0x55444C4A;
+	private static final int sVersion = 1;
+	private static final int sHeaderSize = 32;
+	private static final int sEndPosition = 24;
+	private static final int sCountPosition = 28;
+	private static final int sRecordHeaderSize = 13;
+	private static final String sExtension = ".seg";
+
+	private final Path fRoot;
+	private final Path fSession;
+	private final int fSegmentSize;
+	private final int fMaxSegments;
+	//Oldest first, read by http requests while the broadcast worker appends
+	private final List<Segment> fSegments;
+	//Files of segments that have left the index but haven't been deleted yet
+	private final List<Path> fDeletes;
+	@Nullable
+	private MappedByteBuffer fBuffer;
+	@Nullable
+	private Segment fCurrent;
+	private int fSegmentNumber;
+	private boolean fFailed;
+
+	public LogJournal(Path root, int segmentSize, int maxSegments) throws IOException {
+		fRoot = root;
+		fSession = root.resolve(new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()));
+		fSegmentSize = Math.max(segmentSize, sHeaderSize + sRecordHeaderSize + 256);
+		fMaxSegments = Math.max(maxSegments, 1);
+		fSegments = new CopyOnWriteArrayList<>();
+		fDeletes = new ArrayList<>();
+		fSegmentNumber = 0;
+		fFailed = false;
+
+		Files.createDirectories(fSession);
+
+		//Segments from earlier sessions stay readable until they are rotated out
+		List<Segment> existing = new ArrayList<>();
+		try (Stream<Path> files = Files.walk(fRoot, 2)) {
+			files.filter(file -> file.getFileName().toString().endsWith(sExtension)).sorted().forEach(file -> {
+				@Nullable
+				Segment segment = readSegment(file);
+				if (segment != null) {
+					existing.add(segment);
+				}
+			});
+		}
+		fSegments.addAll(existing);
+	}
+
+	@Nullable
+	private Segment readSegment(Path file) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < sHeaderSize) {
+				return null;
+			}
+
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, sHeaderSize);
+			if (header.getInt(0) != sMagic || header.getInt(4) != sVersion) {
+				return null;
+			}
+
+			int length = (int) Math.min(Math.max(header.getInt(sEndPosition), sHeaderSize), channel.size());
+
+			Segment segment = new Segment(fRoot.relativize(file).toString().replace('\\', '/'), file, header.getLong(8), header.getLong(16),
+					channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+			segment.fLength = length;
+			segment.fRecords = header.getInt(sCountPosition);
+			return segment;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	//Called from the broadcast worker for every log message, the journal stops writing if the disk fails
+	public void append(LogManager.Level level, long time, long sequence, String message) {
+		if (fFailed) {
+			return;
+		}
+
+		try {
+			byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+
+			//A message longer than a segment is cut off
+			int maxLength = fSegmentSize - sHeaderSize - sRecordHeaderSize;
+			int length = Math.min(bytes.length, maxLength);
+
+			@Nullable
+			MappedByteBuffer buffer = fBuffer;
+			@Nullable
+			Segment segment = fCurrent;
+			if (buffer == null || segment == null || buffer.remaining() < sRecordHeaderSize + length) {
+				rotate(sequence, time);
+				buffer = fBuffer;
+				segment = fCurrent;
+			}
+
+			buffer.putInt(length);
+			buffer.put((byte) level.ordinal());
+			buffer.putLong(time);
+			buffer.put(bytes, 0, length);
+
+			segment.fRecords++;
+			buffer.putInt(sCountPosition, segment.fRecords);
+			buffer.putInt(sEndPosition, buffer.position());
+			segment.fLength = buffer.position();
+		} catch (Exception e) {
+			fFailed = true;
+			sLogger.error("Log journal stopped: " + e.getMessage());
+		}
+	}
+
+	//Finishes the current segment and maps a new one, then deletes the oldest segments past the limit
+	private void rotate(long sequence, long time) throws IOException {
+		flush();
+
+		Path file = fSession.resolve(String.format("%06d", fSegmentNumber++) + sExtension);
+
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			//The mapping stays valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fSegmentSize);
+		}
+
+		buffer.putInt(sMagic);
+		buffer.putInt(sVersion);
+		buffer.putLong(sequence);
+		buffer.putLong(time);
+		buffer.putInt(sHeaderSize);
+		buffer.putInt(0);
+
+		Segment segment = new Segment(fRoot.relativize(file).toString().replace('\\', '/'), file, sequence, time, buffer.asReadOnlyBuffer());
+		segment.fLength = sHeaderSize;
+
+		fBuffer = buffer;
+		fCurrent = segment;
+		fSegments.add(segment);
+
+		//Segments are taken out of the index before their files are deleted so they are never served half deleted
+		while (fSegments.size() > fMaxSegments) {
+			fDeletes.add(fSegments.remove(0).getFile());
+		}
+
+		deleteOldSegments();
+	}
+
+	//Deletes the files of segments that were rotated out, a file that can't be deleted yet is tried again on the next rotation
+	//Windows won't delete a file while it is still mapped, so a failed delete doesn't stop the journal
+	private void deleteOldSegments() {
+		for (Iterator<Path> iterator = fDeletes.iterator(); iterator.hasNext(); ) {
+			Path file = iterator.next();
+
+			try {
+				Files.deleteIfExists(file);
+				iterator.remove();
+			} catch (IOException e) {
+				sLogger.error("Couldn't delete log journal segment " + file + ": " + e.getMessage());
+				continue;
+			}
+
+			@Nullable
+			Path directory = file.getParent();
+			if (directory != null && !directory.equals(fSession)) {
+				try (Stream<Path> files = Files.list(directory)) {
+					if (files.findAny().isEmpty()) {
+						Files.delete(directory);
+					}
+				} catch (IOException e) {
+					sLogger.error("Couldn't delete log journal session " + directory + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	//Writes the current segment to disk
+	public void flush() {
+		@Nullable
+		MappedByteBuffer buffer = fBuffer;
+
+		if (buffer != null) {
+			buffer.force();
+		}
+	}
+
+	//Every segment on disk, oldest first
+	public List<Segment> getSegments() {
+		return fSegments;
+	}
+
+	//Looks up a segment by its name in the index, names that aren't in the index are never opened
+	@Nullable
+	public Segment getSegment(String name) {
+		for (Segment segment : fSegments) {
+			if (segment.getName().equals(name)) {
+				return segment;
+			}
+		}
+
+		return null;
+	}
+
+	//The written part of the segment, it shares the segment's mapping so it can be sent without opening the file or copying it onto the heap
+	public ByteBuffer read(Segment segment) {
+		ByteBuffer view = segment.fView.duplicate();
+		view.position(0).limit(segment.getLength());
+		return view.slice();
+	}
+
+	/**
+	 * Segment is one file of the journal
+	 */
+
+	public static class Segment {
+
+		private final String fName;
+		private final Path fFile;
+		private final long fFirstSequence;
+		private final long fFirstTime;
+		//Mapped when the segment is written or found, requests only read duplicates of it
+		private final ByteBuffer fView;
+		private volatile int fLength;
+		private volatile int fRecords;
+
+		private Segment(String name, Path file, long firstSequence, long firstTime, ByteBuffer view) {
+			fName = name;
+			fFile = file;
+			fFirstSequence = firstSequence;
+			fFirstTime = firstTime;
+			fView = view;
+			fLength = 0;
+			fRecords = 0;
+		}
+
+		//The session directory and file name, such as "20200301-153000/000002.seg"
+		public String getName() {
+			return fName;
+		}
+
+		public Path getFile() {
+			return fFile;
+		}
+
+		public long getFirstSequence() {
+			return fFirstSequence;
+		}
+
+		public long getFirstTime() {
+			return fFirstTime;
+		}
+
+		//The number of bytes written, including the header
+		public int getLength() {
+			return fLength;
+		}
+
+		public int getRecords() {
+			return fRecords;
+		}
+	}
+}
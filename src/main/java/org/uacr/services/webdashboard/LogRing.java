@@ -0,0 +1,111 @@
+package org.uacr.services.webdashboard;
+
+import org.uacr.utilities.logging.LogManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LogRing is a bounded queue of log records that any number of threads add to and one thread drains
+ * The records are preallocated slots claimed with a compare and set, so logging never blocks or allocates,
+ * and a record that doesn't fit is counted as dropped instead of pushing out an older one
+ */
+
+public class LogRing {
+
+	private final int fMask;
+	//Each slot's sequence says whether it is free for the producer at that position or ready for the consumer
+	private final AtomicLongArray fSequences;
+	private final LogManager.Level[] fLevels;
+	private final long[] fTimes;
+	private final String[] fMessages;
+	private final AtomicLong fTail;
+	private final AtomicLong fDropped;
+	//Only read and written by the draining thread
+	private long fHead;
+
+	//The capacity is rounded up to a power of two
+	public LogRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+
+		fMask = size - 1;
+		fSequences = new AtomicLongArray(size);
+		fLevels = new LogManager.Level[size];
+		fTimes = new long[size];
+		fMessages = new String[size];
+		fTail = new AtomicLong(0);
+		fDropped = new AtomicLong(0);
+		fHead = 0;
+
+		for (int index = 0; index < size; index++) {
+			fSequences.set(index, index);
+		}
+	}
+
+	//Adds a record from any thread, returns false and counts it as dropped if the ring is full
+	public boolean add(LogManager.Level level, long time, String message) {
+		while (true) {
+			long tail = fTail.get();
+			int index = (int) (tail & fMask);
+			long sequence = fSequences.get(index);
+
+			if (sequence == tail) {
+				if (fTail.compareAndSet(tail, tail + 1)) {
+					fLevels[index] = level;
+					fTimes[index] = time;
+					fMessages[index] = message;
+
+					//Publishes the record to the consumer
+					fSequences.set(index, tail + 1);
+					return true;
+				}
+			} else if (sequence < tail) {
+				//The slot still holds a record from the last time around that hasn't been drained
+				fDropped.incrementAndGet();
+				return false;
+			}
+
+			//Another thread claimed the slot first
+		}
+	}
+
+	//Passes every published record to the reader in order and frees their slots, must only be called from one thread
+	public int drain(Reader reader) {
+		int count = 0;
+
+		while (true) {
+			int index = (int) (fHead & fMask);
+
+			if (fSequences.get(index) != fHead + 1) {
+				return count;
+			}
+
+			reader.read(fLevels[index], fTimes[index], fMessages[index]);
+
+			fLevels[index] = null;
+			fMessages[index] = null;
+			fSequences.set(index, fHead + fMask + 1);
+
+			fHead++;
+			count++;
+		}
+	}
+
+	//The number of records that have been dropped because the ring was full
+	public long getDropped() {
+		return fDropped.get();
+	}
+
+	public int getCapacity() {
+		return fMask + 1;
+	}
+
+	/**
+	 * Reader receives the records drained from a LogRing
+	 */
+
+	public interface Reader {
+
+		void read(LogManager.Level level, long time, String message);
+	}
+}
@@ -0,0 +1,297 @@
+package org.uacr.services.webdashboard;
+
+import org.uacr.utilities.logging.LogManager;
+
+import javax.annotation.Nullable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * LogStore keeps the most recent log messages in an append only ring, each message is numbered by a sequence that never repeats
+ * Readers keep their own cursor into the sequence, so reading never removes a message another reader hasn't seen yet
+ * Each level keeps an index of the messages at or above it, so a query for a level only looks at the messages that can match
+ */
+
+public class LogStore {
+
+	private static final LogManager.Level[] sLevels = LogManager.Level.values();
+	//Patterns come from log pages, so a query only matches the start of each message and stops once it has read this many characters,
+	//which keeps a pathological pattern from holding up the broadcast worker
+	private static final int sMaxMatchLength = 1024;
+	//A whole query reads at most this many characters, a few times what an ordinary pattern needs to scan a full store
+	private static final long sMatchBudget = 4000000;
+
+	private final int fMask;
+	private final LogManager.Level[] fLevels;
+	private final long[] fTimes;
+	private final String[] fMessages;
+	//The sequences of the messages at or above each level, indexed by the level's ordinal
+	private final long[][] fIndexes;
+	private final long[] fIndexCounts;
+	private final MatchText fMatchText;
+	private long fNext;
+
+	//The capacity is rounded up to a power of two
+	public LogStore(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+
+		fMask = size - 1;
+		fLevels = new LogManager.Level[size];
+		fTimes = new long[size];
+		fMessages = new String[size];
+		fIndexes = new long[sLevels.length][size];
+		fIndexCounts = new long[sLevels.length];
+		fMatchText = new MatchText();
+		fNext = 0;
+	}
+
+	//Adds a message, the oldest message is forgotten once the store is full
+	public long append(LogManager.Level level, long time, String message) {
+		long sequence = fNext++;
+		int index = (int) (sequence & fMask);
+
+		fLevels[index] = level;
+		fTimes[index] = time;
+		fMessages[index] = message;
+
+		for (LogManager.Level indexLevel : sLevels) {
+			if (level.getPriority() >= indexLevel.getPriority()) {
+				fIndexes[indexLevel.ordinal()][(int) (fIndexCounts[indexLevel.ordinal()]++ & fMask)] = sequence;
+			}
+		}
+
+		return sequence;
+	}
+
+	//The sequence of the oldest message still in the store
+	public long getFirst() {
+		return Math.max(0, fNext - fMask - 1);
+	}
+
+	//The sequence the next message will get
+	public long getNext() {
+		return fNext;
+	}
+
+	public LogManager.Level getLevel(long sequence) {
+		return fLevels[(int) (sequence & fMask)];
+	}
+
+	public long getTime(long sequence) {
+		return fTimes[(int) (sequence & fMask)];
+	}
+
+	public String getMessage(long sequence) {
+		return fMessages[(int) (sequence & fMask)];
+	}
+
+	//Fills the page with the newest messages before the sequence that are at or above the level, match the pattern and were logged between the times
+	//Messages are stored in the order they were logged, so the search stops at the first message older than the start time
+	//A query whose pattern reads more than the budget stops early and is marked as aborted
+	public void query(LogManager.Level level, @Nullable Pattern pattern, long startTime, long endTime, long before, int limit, Page page) {
+		page.clear(limit);
+
+		long[] index = fIndexes[level.ordinal()];
+		long count = fIndexCounts[level.ordinal()];
+		long first = getFirst();
+
+		@Nullable
+		Matcher matcher = pattern != null ? pattern.matcher("") : null;
+		fMatchText.setBudget(sMatchBudget);
+
+		long position = find(level, before) - 1;
+		for (; position >= 0 && position >= count - fMask - 1 && !page.isFull(); position--) {
+			long sequence = index[(int) (position & fMask)];
+
+			//The index can outlive the messages it points to
+			if (sequence < first) {
+				break;
+			}
+
+			long time = getTime(sequence);
+			if (time < startTime) {
+				break;
+			}
+
+			if (time <= endTime) {
+				if (matcher != null) {
+					try {
+						if (!matcher.reset(fMatchText.set(getMessage(sequence))).find()) {
+							continue;
+						}
+					} catch (MatchBudgetException e) {
+						page.setAborted(true);
+						return;
+					}
+				}
+
+				page.add(sequence);
+			}
+		}
+
+		//Whether there are older messages that could be on the next page
+		page.setMore(position >= 0 && position >= count - fMask - 1 && index[(int) (position & fMask)] >= first
+				&& getTime(index[(int) (position & fMask)]) >= startTime);
+	}
+
+	//Passes the messages at or above the level from the sequence on to the reader in order,
+	//returns the sequence to read from next time so a reader only ever looks at new messages of its level
+	public long read(LogManager.Level level, long from, Reader reader) {
+		long[] index = fIndexes[level.ordinal()];
+		long count = fIndexCounts[level.ordinal()];
+
+		for (long position = find(level, Math.max(from, getFirst())); position < count; position++) {
+			reader.read(index[(int) (position & fMask)]);
+		}
+
+		return fNext;
+	}
+
+	//Finds the first position in the level's index whose sequence isn't before the sequence
+	private long find(LogManager.Level level, long sequence) {
+		long[] index = fIndexes[level.ordinal()];
+		long count = fIndexCounts[level.ordinal()];
+
+		long low = Math.max(0, count - fMask - 1);
+		long high = count;
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+
+			if (index[(int) (middle & fMask)] < sequence) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Reader receives the sequences of the messages read from a LogStore
+	 */
+
+	public interface Reader {
+
+		void read(long sequence);
+	}
+
+	/**
+	 * Page holds the sequences found by a query, newest first
+	 */
+
+	public static class Page {
+
+		private final long[] fSequences;
+		private int fLimit;
+		private int fSize;
+		private boolean fMore;
+		private boolean fAborted;
+
+		public Page(int capacity) {
+			fSequences = new long[capacity];
+			fLimit = capacity;
+			fSize = 0;
+			fMore = false;
+			fAborted = false;
+		}
+
+		//Empties the page, it holds at most the limit or its capacity, whichever is smaller
+		private void clear(int limit) {
+			fLimit = Math.max(1, Math.min(limit, fSequences.length));
+			fSize = 0;
+			fMore = false;
+			fAborted = false;
+		}
+
+		private void add(long sequence) {
+			fSequences[fSize++] = sequence;
+		}
+
+		private void setMore(boolean more) {
+			fMore = more;
+		}
+
+		private void setAborted(boolean aborted) {
+			fAborted = aborted;
+		}
+
+		public boolean isFull() {
+			return fSize == fLimit;
+		}
+
+		public int size() {
+			return fSize;
+		}
+
+		public long get(int i) {
+			return fSequences[i];
+		}
+
+		//Whether older messages might match, the oldest sequence on the page is where the next page starts
+		public boolean hasMore() {
+			return fMore;
+		}
+
+		//Whether the query's pattern used up its budget before the page was filled
+		public boolean isAborted() {
+			return fAborted;
+		}
+	}
+
+	/**
+	 * MatchText is the part of a message a pattern is matched against, every character the pattern reads is taken from the query's budget
+	 */
+
+	private static class MatchText implements CharSequence {
+
+		private String fText = "";
+		private int fLength = 0;
+		private long fBudget = 0;
+
+		private void setBudget(long budget) {
+			fBudget = budget;
+		}
+
+		private MatchText set(String text) {
+			fText = text;
+			fLength = Math.min(text.length(), sMaxMatchLength);
+			return this;
+		}
+
+		@Override
+		public int length() {
+			return fLength;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (--fBudget < 0) {
+				throw new MatchBudgetException();
+			}
+
+			return fText.charAt(index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return fText.substring(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return fText.substring(0, fLength);
+		}
+	}
+
+	/**
+	 * MatchBudgetException stops a pattern that has read more than a query allows, it has no stack trace since it is expected
+	 */
+
+	private static class MatchBudgetException extends RuntimeException {
+
+		private MatchBudgetException() {
+			super("Pattern took too long", null, false, false);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package org.uacr.services.webdashboard;
+
+import org.uacr.utilities.logging.LogManager;
+
+import javax.annotation.Nullable;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MatchWidget is one entry of "match_values" compiled once when the server is initialized,
+ * so each broadcast reads its value straight out of the ValueStore instead of looking through the config
+ */
+
+public class MatchWidget {
+
+	public enum Type {
+		VALUE("value"),
+		BOOLEAN("boolean"),
+		OTHER("other"),
+		AUTO("auto"),
+		DIAL("dial"),
+		LOG("log");
+
+		private final String fName;
+
+		Type(String name) {
+			fName = name;
+		}
+
+		//The name used in the config and sent to the match page
+		public String getName() {
+			return fName;
+		}
+
+		@Nullable
+		public static Type fromName(String name) {
+			for (Type type : values()) {
+				if (type.fName.equals(name)) {
+					return type;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	private final String fConfigKey;
+	private final Type fType;
+	private final String fDisplayName;
+	private final int fId;
+	private final int fValueId;
+	private final String fMin;
+	private final String fMax;
+	private final LogManager.Level fLevel;
+
+	private MatchWidget(String configKey, Type type, String displayName, int id, int valueId, String min, String max, LogManager.Level level) {
+		fConfigKey = configKey;
+		fType = type;
+		fDisplayName = displayName;
+		fId = id;
+		fValueId = valueId;
+		fMin = min;
+		fMax = max;
+		fLevel = level;
+	}
+
+	//Compiles a "match_values" entry, the widget's id comes from the match key table and its value id from the values key table
+	//Throws an IllegalArgumentException if the entry doesn't have a known type or level, before an id is taken for it
+	public static MatchWidget compile(String configKey, Map<String, Object> config, KeyTable matchKeyTable, KeyTable valueKeyTable) {
+		@Nullable
+		Type type = Type.fromName(String.valueOf(config.get("type")));
+		if (type == null) {
+			throw new IllegalArgumentException("Unknown type \"" + config.get("type") + "\"");
+		}
+
+		String displayName = config.containsKey("display_name") ? String.valueOf(config.get("display_name")) : configKey;
+		String min = config.containsKey("min") ? String.valueOf(config.get("min")) : "0";
+		String max = config.containsKey("max") ? String.valueOf(config.get("max")) : "10";
+
+		LogManager.Level level = LogManager.Level.INFO;
+		if (config.containsKey("level")) {
+			try {
+				level = LogManager.Level.valueOf(String.valueOf(config.get("level")).toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown level \"" + config.get("level") + "\"");
+			}
+		}
+
+		return new MatchWidget(configKey, type, displayName, matchKeyTable.getId(displayName), valueKeyTable.getId(configKey), min, max, level);
+	}
+
+	public String getConfigKey() {
+		return fConfigKey;
+	}
+
+	public Type getType() {
+		return fType;
+	}
+
+	public String getDisplayName() {
+		return fDisplayName;
+	}
+
+	//The id of the display name in the match key table
+	public int getId() {
+		return fId;
+	}
+
+	//The id of the config key in the values key table
+	public int getValueId() {
+		return fValueId;
+	}
+
+	//Whether the ValueStore has a value for the widget
+	public boolean hasValue(ValueStore values) {
+		return values.has(ValueStore.OUTPUT, fValueId) || values.has(ValueStore.STRING, fValueId)
+				|| values.has(ValueStore.BOOLEAN, fValueId) || values.has(ValueStore.NUMERIC, fValueId);
+	}
+
+	//Appends the widget's current value the same way String.valueOf would format it,
+	//outputs take precedence over strings, booleans and then numerics with the same name
+	public void appendValue(StringBuilder builder, ValueStore values) {
+		if (values.has(ValueStore.OUTPUT, fValueId)) {
+			builder.append(values.getOutput(fValueId));
+		} else if (values.has(ValueStore.STRING, fValueId)) {
+			builder.append(values.getString(fValueId));
+		} else if (values.has(ValueStore.BOOLEAN, fValueId)) {
+			builder.append(values.getBoolean(fValueId));
+		} else if (values.has(ValueStore.NUMERIC, fValueId)) {
+			builder.append(values.getNumeric(fValueId));
+		} else if (fType == Type.DIAL) {
+			builder.append("0");
+		}
+	}
+
+	//The dial's bounds as they were written in the config
+	public String getMin() {
+		return fMin;
+	}
+
+	public String getMax() {
+		return fMax;
+	}
+
+	//The lowest level of log message shown by a log widget
+	public LogManager.Level getLevel() {
+		return fLevel;
+	}
+}
@@ -0,0 +1,95 @@
+package org.uacr.services.webdashboard;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * RateGroup is shared by the clients that asked for the same update rate
+ * Changes are collected between sends, so a send carries only the latest value of each key that changed since the last one,
+ * and the frames built for a send are shared by every client in the group
+ */
+
+public class RateGroup {
+
+	private final long fInterval;
+	private final BitSet fPendingValues;
+	private final BitSet fPendingMatchValues;
+	private final Map<Integer, StringBuilder> fPendingLogs;
+	private final Map<Subscription, ByteBuffer[]> fValuesFrames;
+	private final ByteBuffer[] fMatchFrames;
+	private long fNextSendTime;
+	private boolean fDue;
+
+	public RateGroup(long interval) {
+		fInterval = interval;
+		fPendingValues = new BitSet();
+		fPendingMatchValues = new BitSet();
+		fPendingLogs = new HashMap<>();
+		fValuesFrames = new HashMap<>();
+		fMatchFrames = new ByteBuffer[2];
+		fNextSendTime = 0;
+		fDue = false;
+	}
+
+	//The time between sends in milliseconds, 0 sends every broadcast
+	public long getInterval() {
+		return fInterval;
+	}
+
+	//Called at the start of each broadcast to decide whether the group sends this time
+	public void startBroadcast(long currentTime) {
+		fDue = currentTime >= fNextSendTime;
+
+		fValuesFrames.clear();
+		fMatchFrames[0] = null;
+		fMatchFrames[1] = null;
+	}
+
+	//Called at the end of each broadcast, a group that sent forgets the changes it sent
+	public void finishBroadcast(long currentTime) {
+		if (!fDue) {
+			return;
+		}
+
+		fPendingValues.clear();
+		fPendingMatchValues.clear();
+		fPendingLogs.clear();
+
+		//Sends stay on the interval unless the group fell a whole interval behind
+		fNextSendTime += fInterval;
+		if (fNextSendTime <= currentTime) {
+			fNextSendTime = currentTime + fInterval;
+		}
+	}
+
+	public boolean isDue() {
+		return fDue;
+	}
+
+	//The ids of the values that changed since the group last sent
+	public BitSet getPendingValues() {
+		return fPendingValues;
+	}
+
+	//The ids of the match values that changed since the group last sent
+	public BitSet getPendingMatchValues() {
+		return fPendingMatchValues;
+	}
+
+	//Log messages are not replaced by newer ones, so they are collected until the group sends
+	public Map<Integer, StringBuilder> getPendingLogs() {
+		return fPendingLogs;
+	}
+
+	//The values frames built this broadcast for a subscription, indexed by encoding
+	public ByteBuffer[] getValuesFrames(Subscription subscription) {
+		return fValuesFrames.computeIfAbsent(subscription, s -> new ByteBuffer[3]);
+	}
+
+	//The match values frames built this broadcast, indexed by encoding
+	public ByteBuffer[] getMatchFrames() {
+		return fMatchFrames;
+	}
+}
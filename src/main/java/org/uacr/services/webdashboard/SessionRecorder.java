@@ -0,0 +1,284 @@
+package org.uacr.services.webdashboard;
+
+import org.uacr.utilities.logging.LogManager;
+import org.uacr.utilities.logging.Logger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * SessionRecorder writes every value change seen by the broadcast to a compressed, append only recording
+ * The broadcast worker only encodes the changes into a batch, a background thread compresses full batches and writes them,
+ * so recording costs the broadcast an encode and a copy
+ *
+ * File layout, big endian:
+ * header - int magic, int version
+ * block - long time of its first tick, int raw length, int compressed length, deflated ticks
+ * tick - byte tick type, long time, int length, binary values records as written by BinaryValuesEncoder
+ *
+ * Every block starts with a keyframe that defines every key and holds every value, so a block can be read on its own
+ * The ticks after it are deltas that define the keys added since the last tick and hold the values that changed
+ */
+
+public class SessionRecorder {
+
+	public static final int MAGIC = 0x55445243;
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 8;
+	public static final int BLOCK_HEADER_SIZE = 16;
+
+	public static final byte KEYFRAME = 1;
+	public static final byte DELTA = 2;
+
+	private static final Logger sLogger = LogManager.getLogger(SessionRecorder.class);
+	//A block is finished early once its ticks reach this size
+	private static final int sBlockSize = 256 * 1024;
+	//Batches waiting to be written, if the writer falls this far behind batches are dropped until it catches up
+	private static final int sQueuedBatches = 8;
+
+	private final Path fFile;
+	private final FileChannel fChannel;
+	private final long fKeyframeInterval;
+	private final BinaryValuesEncoder fEncoder;
+	private final BlockingQueue<Batch> fQueue;
+	private final BlockingQueue<Batch> fFreeBatches;
+	private final AtomicLong fDroppedBatches;
+	private final Thread fThread;
+	@Nullable
+	private Batch fBatch;
+	private long fNextKeyframe;
+	private int fDefinedKeys;
+	private boolean fClosed;
+
+	public SessionRecorder(Path directory, long keyframeInterval) throws IOException {
+		Files.createDirectories(directory);
+
+		fFile = directory.resolve("session-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".rec");
+		fChannel = FileChannel.open(fFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		fKeyframeInterval = keyframeInterval;
+		fEncoder = new BinaryValuesEncoder();
+		fQueue = new ArrayBlockingQueue<>(sQueuedBatches);
+		fFreeBatches = new ArrayBlockingQueue<>(sQueuedBatches);
+		fDroppedBatches = new AtomicLong(0);
+		fBatch = null;
+		fNextKeyframe = 0;
+		fDefinedKeys = 0;
+		fClosed = false;
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.flip();
+		while (header.hasRemaining()) {
+			fChannel.write(header);
+		}
+
+		fThread = new Thread(this::run, "WebDashboard - Session Recorder");
+		fThread.setDaemon(true);
+		fThread.start();
+	}
+
+	//Called from the broadcast worker after the value store is updated, records the values that changed
+	public synchronized void record(long time, ValueStore values, KeyTable keyTable) {
+		if (fClosed) {
+			return;
+		}
+
+		@Nullable
+		Batch batch = fBatch;
+
+		boolean keyframe = batch == null || time >= fNextKeyframe || batch.fBuffer.position() >= sBlockSize;
+		if (keyframe) {
+			if (batch != null) {
+				submit(batch);
+			}
+
+			batch = takeFreeBatch(time);
+			fBatch = batch;
+			fNextKeyframe = time + fKeyframeInterval;
+			fDefinedKeys = 0;
+		}
+
+		fEncoder.reset();
+
+		for (int id = fDefinedKeys; id < keyTable.size(); id++) {
+			fEncoder.putDefine(id, keyTable.getName(id));
+		}
+		fDefinedKeys = keyTable.size();
+
+		BitSet ids = keyframe ? values.getPresent() : values.getDirty();
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			if (values.has(ValueStore.NUMERIC, id)) fEncoder.putNumeric(id, values.getNumeric(id));
+			if (values.has(ValueStore.BOOLEAN, id)) fEncoder.putBoolean(id, values.getBoolean(id));
+			if (values.has(ValueStore.STRING, id)) fEncoder.putString(id, values.getString(id));
+			if (values.has(ValueStore.VECTOR, id)) fEncoder.putVector(id, values.getVector(id));
+			if (values.has(ValueStore.OUTPUT, id)) fEncoder.putOutput(id, values.getOutput(id));
+		}
+
+		//Ticks where nothing changed aren't recorded
+		if (!keyframe && fEncoder.isEmpty()) {
+			return;
+		}
+
+		ByteBuffer records = fEncoder.getRecords();
+		batch.ensureCapacity(13 + records.remaining());
+		batch.fBuffer.put(keyframe ? KEYFRAME : DELTA);
+		batch.fBuffer.putLong(time);
+		batch.fBuffer.putInt(records.remaining());
+		batch.fBuffer.put(records);
+	}
+
+	//Writes the batch being recorded and stops the writer once everything queued is written
+	public synchronized void close() {
+		if (fClosed) {
+			return;
+		}
+		fClosed = true;
+
+		@Nullable
+		Batch batch = fBatch;
+		fBatch = null;
+
+		try {
+			if (batch != null) {
+				fQueue.put(batch);
+			}
+
+			//An empty batch tells the writer to stop
+			fQueue.put(new Batch(0));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//The number of batches dropped because the disk couldn't keep up
+	public long getDroppedBatches() {
+		return fDroppedBatches.get();
+	}
+
+	public Path getFile() {
+		return fFile;
+	}
+
+	//Hands the batch to the writer without waiting, a dropped batch only loses the ticks up to the next keyframe
+	private void submit(Batch batch) {
+		if (!fQueue.offer(batch)) {
+			fDroppedBatches.incrementAndGet();
+			batch.clear(0);
+			fFreeBatches.offer(batch);
+		}
+	}
+
+	private Batch takeFreeBatch(long time) {
+		@Nullable
+		Batch batch = fFreeBatches.poll();
+
+		if (batch == null) {
+			batch = new Batch(sBlockSize + sBlockSize / 4);
+		}
+
+		batch.clear(time);
+		return batch;
+	}
+
+	private void run() {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+		byte[] compressed = new byte[sBlockSize];
+
+		try {
+			while (true) {
+				Batch batch = fQueue.take();
+
+				if (batch.fBuffer.capacity() == 0) {
+					break;
+				}
+
+				if (batch.fBuffer.position() > 0) {
+					int rawLength = batch.fBuffer.position();
+
+					deflater.reset();
+					deflater.setInput(batch.fBuffer.array(), 0, rawLength);
+					deflater.finish();
+
+					int compressedLength = 0;
+					while (!deflater.finished()) {
+						if (compressedLength == compressed.length) {
+							compressed = Arrays.copyOf(compressed, compressed.length * 2);
+						}
+						compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+					}
+
+					header.clear();
+					header.putLong(batch.fStartTime);
+					header.putInt(rawLength);
+					header.putInt(compressedLength);
+					header.flip();
+
+					//The block header and its ticks are written together
+					ByteBuffer[] block = {header, ByteBuffer.wrap(compressed, 0, compressedLength)};
+					while (block[1].hasRemaining()) {
+						fChannel.write(block);
+					}
+				}
+
+				batch.clear(0);
+				fFreeBatches.offer(batch);
+			}
+		} catch (Exception e) {
+			sLogger.error("Session recording stopped: " + e.getMessage());
+		} finally {
+			deflater.end();
+
+			try {
+				fChannel.close();
+			} catch (IOException e) {
+				sLogger.error(e);
+			}
+		}
+	}
+
+	/**
+	 * Batch is the ticks of one block
+	 */
+
+	private static class Batch {
+
+		private ByteBuffer fBuffer;
+		private long fStartTime;
+
+		private Batch(int capacity) {
+			fBuffer = ByteBuffer.allocate(capacity);
+			fStartTime = 0;
+		}
+
+		private void clear(long startTime) {
+			fBuffer.clear();
+			fStartTime = startTime;
+		}
+
+		private void ensureCapacity(int bytes) {
+			if (fBuffer.remaining() >= bytes) {
+				return;
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate(Math.max(fBuffer.capacity() * 2, fBuffer.position() + bytes));
+			fBuffer.flip();
+			buffer.put(fBuffer);
+			fBuffer = buffer;
+		}
+	}
+}
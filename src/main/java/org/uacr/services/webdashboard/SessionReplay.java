@@ -0,0 +1,355 @@
+package org.uacr.services.webdashboard;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * SessionReplay plays back a recording written by SessionRecorder in place of the robot's values
+ * The file is memory mapped and only the block headers are read when it is opened, so any point in a long session
+ * can be found by searching the block start times and decoding the one block that holds it
+ * Playback can be paused, seeked and run from 0.25 to 16 times real time
+ */
+
+public class SessionReplay {
+
+	public static final double MIN_SPEED = 0.25;
+	public static final double MAX_SPEED = 16;
+
+	private final ByteBuffer fFile;
+	private final long[] fBlockTimes;
+	private final int[] fBlockOffsets;
+	private final int fBlocks;
+	private final long fEndTime;
+	private final Inflater fInflater;
+	private final List<String> fNames;
+	private final Map<String, Double> fNumerics;
+	private final Map<String, Boolean> fBooleans;
+	private final Map<String, String> fStrings;
+	private final Map<String, Map<String, Double>> fVectors;
+	private final Map<String, Object> fOutputs;
+	private byte[] fBlock;
+	private ByteBuffer fTicks;
+	private int fBlockIndex;
+	private long fPosition;
+	private long fLastUpdateTime;
+	private double fSpeed;
+	private boolean fPaused;
+
+	public SessionReplay(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Recording is too large to map");
+			}
+
+			fFile = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (fFile.remaining() < SessionRecorder.HEADER_SIZE || fFile.getInt(0) != SessionRecorder.MAGIC || fFile.getInt(4) != SessionRecorder.VERSION) {
+			throw new IOException("Not a session recording");
+		}
+
+		//Only the block headers are read, a block cut off by the robot shutting down is left out
+		List<Long> times = new ArrayList<>();
+		List<Integer> offsets = new ArrayList<>();
+		int offset = SessionRecorder.HEADER_SIZE;
+		while (offset + SessionRecorder.BLOCK_HEADER_SIZE <= fFile.limit()) {
+			int compressedLength = fFile.getInt(offset + 12);
+			if (compressedLength < 0 || offset + SessionRecorder.BLOCK_HEADER_SIZE + compressedLength > fFile.limit()) {
+				break;
+			}
+
+			times.add(fFile.getLong(offset));
+			offsets.add(offset);
+			offset += SessionRecorder.BLOCK_HEADER_SIZE + compressedLength;
+		}
+
+		if (times.isEmpty()) {
+			throw new IOException("Recording has no values");
+		}
+
+		fBlocks = times.size();
+		fBlockTimes = new long[fBlocks];
+		fBlockOffsets = new int[fBlocks];
+		for (int block = 0; block < fBlocks; block++) {
+			fBlockTimes[block] = times.get(block);
+			fBlockOffsets[block] = offsets.get(block);
+		}
+
+		fInflater = new Inflater();
+		fNames = new ArrayList<>();
+		fNumerics = new HashMap<>();
+		fBooleans = new HashMap<>();
+		fStrings = new HashMap<>();
+		fVectors = new HashMap<>();
+		fOutputs = new HashMap<>();
+		fBlock = new byte[0];
+		fTicks = ByteBuffer.wrap(fBlock);
+		fBlockIndex = -1;
+		fSpeed = 1;
+		fPaused = false;
+		fLastUpdateTime = -1;
+
+		//The end is the time of the last tick in the last block
+		loadBlock(fBlocks - 1);
+		long endTime = fBlockTimes[fBlocks - 1];
+		while (fTicks.remaining() >= 13) {
+			endTime = fTicks.getLong(fTicks.position() + 1);
+			fTicks.position(fTicks.position() + 13 + fTicks.getInt(fTicks.position() + 9));
+		}
+		fEndTime = endTime;
+
+		seek(getStartTime());
+	}
+
+	//Moves playback forward by the time since the last update scaled by the speed
+	public void update(long currentTime) {
+		if (fLastUpdateTime >= 0 && !fPaused) {
+			long position = fPosition + Math.round((currentTime - fLastUpdateTime) * fSpeed);
+
+			//Playback pauses at the end of the recording
+			if (position >= fEndTime) {
+				position = fEndTime;
+				fPaused = true;
+			}
+
+			playTo(position);
+		}
+
+		fLastUpdateTime = currentTime;
+	}
+
+	//Jumps to a time in the recording by decoding the block it is in from its keyframe
+	public void seek(long time) {
+		time = Math.max(getStartTime(), Math.min(time, fEndTime));
+
+		int block = Arrays.binarySearch(fBlockTimes, time);
+		if (block < 0) {
+			block = -block - 2;
+		}
+
+		loadBlock(block);
+		fPosition = fBlockTimes[block];
+		playTo(time);
+	}
+
+	//Applies every tick up to the time, moving on to the next blocks as they run out
+	private void playTo(long time) {
+		while (true) {
+			if (fTicks.remaining() < 13) {
+				if (fBlockIndex + 1 >= fBlocks || fBlockTimes[fBlockIndex + 1] > time) {
+					break;
+				}
+
+				loadBlock(fBlockIndex + 1);
+				continue;
+			}
+
+			int tick = fTicks.position();
+			long tickTime = fTicks.getLong(tick + 1);
+			if (tickTime > time) {
+				break;
+			}
+
+			byte type = fTicks.get(tick);
+			int length = fTicks.getInt(tick + 9);
+
+			if (type == SessionRecorder.KEYFRAME) {
+				clearValues();
+			}
+
+			ByteBuffer records = fTicks.duplicate();
+			records.position(tick + 13).limit(tick + 13 + length);
+			applyRecords(records);
+
+			fTicks.position(tick + 13 + length);
+		}
+
+		fPosition = time;
+	}
+
+	private void loadBlock(int block) {
+		int offset = fBlockOffsets[block];
+		int rawLength = fFile.getInt(offset + 8);
+		int compressedLength = fFile.getInt(offset + 12);
+
+		ByteBuffer compressed = fFile.duplicate();
+		compressed.position(offset + SessionRecorder.BLOCK_HEADER_SIZE).limit(offset + SessionRecorder.BLOCK_HEADER_SIZE + compressedLength);
+
+		if (fBlock.length < rawLength) {
+			fBlock = new byte[rawLength];
+		}
+
+		//The compressed bytes are read straight out of the mapped file
+		int length = 0;
+		fInflater.reset();
+		fInflater.setInput(compressed);
+		try {
+			while (length < rawLength && !fInflater.finished()) {
+				int inflated = fInflater.inflate(fBlock, length, rawLength - length);
+				if (inflated == 0 && fInflater.needsInput()) {
+					break;
+				}
+				length += inflated;
+			}
+		} catch (DataFormatException e) {
+			length = 0;
+		}
+
+		fTicks = ByteBuffer.wrap(fBlock, 0, length);
+		fBlockIndex = block;
+	}
+
+	private void clearValues() {
+		fNumerics.clear();
+		fBooleans.clear();
+		fStrings.clear();
+		fVectors.clear();
+		fOutputs.clear();
+	}
+
+	//Reads records in the layout written by BinaryValuesEncoder
+	private void applyRecords(ByteBuffer records) {
+		while (records.hasRemaining()) {
+			byte type = records.get();
+			int id = getVarInt(records);
+
+			switch (type) {
+				case BinaryValuesEncoder.DEFINE: {
+					String name = getText(records);
+					while (fNames.size() <= id) {
+						fNames.add("");
+					}
+					fNames.set(id, name);
+					break;
+				}
+				case BinaryValuesEncoder.NUMERIC:
+					fNumerics.put(getName(id), records.getDouble());
+					break;
+				case BinaryValuesEncoder.BOOLEAN:
+					fBooleans.put(getName(id), records.get() != 0);
+					break;
+				case BinaryValuesEncoder.STRING:
+					fStrings.put(getName(id), getText(records));
+					break;
+				case BinaryValuesEncoder.VECTOR: {
+					int size = getVarInt(records);
+					Map<String, Double> vector = new HashMap<>();
+					for (int i = 0; i < size; i++) {
+						vector.put(getText(records), records.getDouble());
+					}
+					fVectors.put(getName(id), vector);
+					break;
+				}
+				case BinaryValuesEncoder.OUTPUT_NUMERIC:
+					fOutputs.put(getName(id), records.getDouble());
+					break;
+				case BinaryValuesEncoder.OUTPUT_BOOLEAN:
+					fOutputs.put(getName(id), records.get() != 0);
+					break;
+				case BinaryValuesEncoder.OUTPUT_STRING:
+					fOutputs.put(getName(id), getText(records));
+					break;
+				default:
+					//The rest of the tick can't be read without knowing the record's length
+					return;
+			}
+		}
+	}
+
+	private String getName(int id) {
+		@Nullable
+		String name = id < fNames.size() ? fNames.get(id) : null;
+
+		return name == null || name.isEmpty() ? "key_" + id : name;
+	}
+
+	private static int getVarInt(ByteBuffer buffer) {
+		int value = 0;
+		int shift = 0;
+
+		while (true) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+
+			shift += 7;
+		}
+	}
+
+	private static String getText(ByteBuffer buffer) {
+		int length = getVarInt(buffer);
+		String text = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+
+		return text;
+	}
+
+	public long getStartTime() {
+		return fBlockTimes[0];
+	}
+
+	public long getEndTime() {
+		return fEndTime;
+	}
+
+	//The time in the recording that is being played
+	public long getPosition() {
+		return fPosition;
+	}
+
+	public double getSpeed() {
+		return fSpeed;
+	}
+
+	//The speed is clamped between the min and max speed, NaN and infinite speeds would stop the replay so they are refused
+	public void setSpeed(double speed) {
+		if (!Double.isFinite(speed)) {
+			throw new IllegalArgumentException("Invalid speed \"" + speed + "\"");
+		}
+
+		fSpeed = Math.max(MIN_SPEED, Math.min(speed, MAX_SPEED));
+	}
+
+	public boolean isPaused() {
+		return fPaused;
+	}
+
+	public void setPaused(boolean paused) {
+		fPaused = paused;
+	}
+
+	public Map<String, Double> getNumerics() {
+		return fNumerics;
+	}
+
+	public Map<String, Boolean> getBooleans() {
+		return fBooleans;
+	}
+
+	public Map<String, String> getStrings() {
+		return fStrings;
+	}
+
+	public Map<String, Map<String, Double>> getVectors() {
+		return fVectors;
+	}
+
+	public Map<String, Object> getOutputs() {
+		return fOutputs;
+	}
+}
@@ -0,0 +1,152 @@
+package org.uacr.services.webdashboard;
+
+import org.uacr.utilities.logging.LogManager;
+import org.uacr.utilities.logging.Logger;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * StaticAssets loads every file under a resource directory once, from the classpath directory or the robot jar,
+ * and keeps each one with a gzipped copy and an ETag so requests never touch the disk
+ */
+
+public class StaticAssets {
+
+	private static final Logger sLogger = LogManager.getLogger(StaticAssets.class);
+	private static final Map<String, String> sContentTypes = Map.ofEntries(
+			Map.entry("html", "text/html; charset=utf-8"),
+			Map.entry("js", "text/javascript; charset=utf-8"),
+			Map.entry("css", "text/css; charset=utf-8"),
+			Map.entry("json", "application/json"),
+			Map.entry("txt", "text/plain; charset=utf-8"),
+			Map.entry("svg", "image/svg+xml"),
+			Map.entry("png", "image/png"),
+			Map.entry("jpg", "image/jpeg"),
+			Map.entry("jpeg", "image/jpeg"),
+			Map.entry("gif", "image/gif"),
+			Map.entry("ico", "image/x-icon"),
+			Map.entry("ttf", "font/ttf"),
+			Map.entry("otf", "font/otf"),
+			Map.entry("woff", "font/woff"),
+			Map.entry("woff2", "font/woff2")
+	);
+
+	private final Map<String, Asset> fAssets;
+
+	public StaticAssets(String root) {
+		Map<String, Asset> assets = new HashMap<>();
+
+		try {
+			@Nullable
+			URL url = StaticAssets.class.getClassLoader().getResource(root);
+
+			if (url == null) {
+				sLogger.error("Missing resource directory " + root);
+			} else {
+				URI uri = url.toURI();
+
+				if (uri.getScheme().equals("jar")) {
+					try (FileSystem jar = FileSystems.newFileSystem(uri, Collections.emptyMap())) {
+						load(jar.getPath(root), root, assets);
+					} catch (FileSystemAlreadyExistsException e) {
+						load(FileSystems.getFileSystem(uri).getPath(root), root, assets);
+					}
+				} else {
+					load(Paths.get(uri), root, assets);
+				}
+			}
+		} catch (Exception e) {
+			sLogger.error(e);
+		}
+
+		fAssets = Collections.unmodifiableMap(assets);
+
+		sLogger.debug("Loaded " + fAssets.size() + " web dashboard assets");
+	}
+
+	//Adds every file under the directory, keyed by its resource path such as "webdashboard/values/values.js"
+	private static void load(Path directory, String root, Map<String, Asset> assets) throws Exception {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+				StringBuilder path = new StringBuilder(root);
+				for (Path part : directory.relativize(file)) {
+					path.append("/").append(part);
+				}
+
+				assets.put(path.toString(), new Asset(Files.readAllBytes(file), getContentType(path.toString())));
+			}
+		}
+	}
+
+	//Looks up the content type by file extension, unknown files are sent as plain bytes
+	public static String getContentType(String path) {
+		int extension = path.lastIndexOf('.');
+
+		if (extension < 0 || extension < path.lastIndexOf('/')) {
+			return "application/octet-stream";
+		}
+
+		return sContentTypes.getOrDefault(path.substring(extension + 1).toLowerCase(), "application/octet-stream");
+	}
+
+	//Returns the asset at the resource path, or null if there isn't one
+	@Nullable
+	public Asset get(String path) {
+		return fAssets.get(path);
+	}
+
+	/**
+	 * Asset is the contents of one file along with its gzipped form and an ETag made from a hash of its contents
+	 */
+
+	public static class Asset {
+
+		private final byte[] fBytes;
+		@Nullable
+		private final byte[] fGzipped;
+		private final String fETag;
+		private final String fContentType;
+
+		public Asset(byte[] bytes, String contentType) throws Exception {
+			fBytes = bytes;
+			fContentType = contentType;
+
+			ByteArrayOutputStream gzipped = new ByteArrayOutputStream(bytes.length);
+			try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+				gzip.write(bytes);
+			}
+
+			//Already compressed files like fonts are kept as they are
+			fGzipped = gzipped.size() < bytes.length ? gzipped.toByteArray() : null;
+
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+			fETag = "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 12)) + "\"";
+		}
+
+		public byte[] getBytes() {
+			return fBytes;
+		}
+
+		//The gzipped contents, or null if gzip doesn't make the file smaller
+		@Nullable
+		public byte[] getGzipped() {
+			return fGzipped;
+		}
+
+		public String getETag() {
+			return fETag;
+		}
+
+		public String getContentType() {
+			return fContentType;
+		}
+	}
+}
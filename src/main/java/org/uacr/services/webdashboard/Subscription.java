@@ -0,0 +1,93 @@
+package org.uacr.services.webdashboard;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Subscription is a compiled set of key names and glob patterns, a "*" in a pattern matches any run of characters
+ * The ids of matching keys are kept in a set that is extended as keys are added to the table,
+ * so each key name is only matched against the patterns once
+ */
+
+public class Subscription {
+
+	private final Set<String> fPatterns;
+	private final boolean fAll;
+	private final Set<String> fNames;
+	private final List<Pattern> fGlobs;
+	private final BitSet fKeys;
+	private int fMatchedKeys;
+	private int fClients;
+
+	public Subscription(Set<String> patterns) {
+		fPatterns = Collections.unmodifiableSet(new HashSet<>(patterns));
+		fAll = patterns.contains("*");
+		fNames = new HashSet<>();
+		fGlobs = new ArrayList<>();
+		fKeys = new BitSet();
+		fMatchedKeys = 0;
+		fClients = 0;
+
+		for (String pattern : patterns) {
+			if (pattern.contains("*")) {
+				StringBuilder regex = new StringBuilder();
+				for (String part : pattern.split("\\*", -1)) {
+					if (regex.length() > 0) {
+						regex.append(".*");
+					}
+					regex.append(Pattern.quote(part));
+				}
+				fGlobs.add(Pattern.compile(regex.toString()));
+			} else {
+				fNames.add(pattern);
+			}
+		}
+	}
+
+	//Matches the keys added to the table since the last update against the patterns
+	public void update(KeyTable keyTable) {
+		if (fAll) {
+			return;
+		}
+
+		for (int id = fMatchedKeys; id < keyTable.size(); id++) {
+			if (matches(keyTable.getName(id))) {
+				fKeys.set(id);
+			}
+		}
+
+		fMatchedKeys = keyTable.size();
+	}
+
+	private boolean matches(String name) {
+		if (fNames.contains(name)) {
+			return true;
+		}
+
+		for (Pattern glob : fGlobs) {
+			if (glob.matcher(name).matches()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	//Whether the key with the id matched when the subscription was last updated
+	public boolean contains(int id) {
+		return fAll || fKeys.get(id);
+	}
+
+	public Set<String> getPatterns() {
+		return fPatterns;
+	}
+
+	//The number of clients using the subscription, kept by SubscriptionIndex
+	int getClients() {
+		return fClients;
+	}
+
+	void setClients(int clients) {
+		fClients = clients;
+	}
+}
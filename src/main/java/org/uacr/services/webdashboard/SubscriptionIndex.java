@@ -0,0 +1,73 @@
+package org.uacr.services.webdashboard;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SubscriptionIndex shares one compiled Subscription between all the clients that asked for the same keys,
+ * so matching new keys and building frames costs the same no matter how many clients use a subscription
+ */
+
+public class SubscriptionIndex {
+
+	private final KeyTable fKeyTable;
+	private final Subscription fAll;
+	private final Map<Set<String>, Subscription> fSubscriptions;
+
+	public SubscriptionIndex(KeyTable keyTable) {
+		fKeyTable = keyTable;
+		fAll = new Subscription(Set.of("*"));
+		fSubscriptions = new HashMap<>();
+	}
+
+	//The subscription to every key, which clients have until they subscribe to something else
+	public Subscription getAll() {
+		return fAll;
+	}
+
+	//Returns the shared subscription to the patterns, releasing the one the client had before
+	public Subscription change(Subscription current, Set<String> patterns) {
+		if (patterns.equals(current.getPatterns())) {
+			return current;
+		}
+
+		release(current);
+
+		if (patterns.contains("*")) {
+			return fAll;
+		}
+
+		Subscription subscription = fSubscriptions.get(patterns);
+		if (subscription == null) {
+			subscription = new Subscription(patterns);
+			subscription.update(fKeyTable);
+			fSubscriptions.put(new HashSet<>(patterns), subscription);
+		}
+
+		subscription.setClients(subscription.getClients() + 1);
+
+		return subscription;
+	}
+
+	//Called when a client stops using a subscription, subscriptions without clients are dropped
+	public void release(Subscription subscription) {
+		if (subscription == fAll) {
+			return;
+		}
+
+		subscription.setClients(subscription.getClients() - 1);
+
+		if (subscription.getClients() <= 0) {
+			fSubscriptions.remove(subscription.getPatterns());
+		}
+	}
+
+	//Matches the keys added since the last update against every subscription
+	public void update() {
+		for (Subscription subscription : fSubscriptions.values()) {
+			subscription.update(fKeyTable);
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package org.uacr.services.webdashboard;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * TimeSeriesStore keeps a history of every numeric value so a graph opened late can show what it missed
+ * Each key has its own ring of times and values indexed by its key table id, a sample is only added when the value changes
+ * Rings start small and double until they reach the capacity, growing stops once the memory budget is used,
+ * so keys that rarely change don't take up the memory of the ones that do
+ * Queries return a window of a series downsampled to the smallest and largest value of each bucket so spikes aren't lost
+ */
+
+public class TimeSeriesStore {
+
+	private static final int sInitialCapacity = 256;
+	//Bytes used by one sample, a long time and a double value
+	private static final int sSampleSize = 16;
+
+	private final int fCapacity;
+	private final long fBudget;
+	private long[][] fTimes;
+	private double[][] fValues;
+	//The index of the oldest sample in each ring and the number of samples in it
+	private int[] fHeads;
+	private int[] fCounts;
+	private long fAllocated;
+
+	//The capacity is the most samples kept for a key, the budget is the most bytes used by every key together
+	public TimeSeriesStore(int capacity, long budget) {
+		fCapacity = Math.max(capacity, sInitialCapacity);
+		fBudget = budget;
+		fTimes = new long[0][];
+		fValues = new double[0][];
+		fHeads = new int[0];
+		fCounts = new int[0];
+		fAllocated = 0;
+	}
+
+	//Adds the numeric values that changed in the last update, numeric outputs are kept along with the inputs
+	public void record(long time, ValueStore values) {
+		BitSet dirty = values.getDirty();
+
+		for (int id = dirty.nextSetBit(0); id >= 0; id = dirty.nextSetBit(id + 1)) {
+			if (values.has(ValueStore.NUMERIC, id)) {
+				add(id, time, values.getNumeric(id));
+			} else if (values.has(ValueStore.OUTPUT, id) && values.getOutput(id) instanceof Number) {
+				add(id, time, ((Number) values.getOutput(id)).doubleValue());
+			}
+		}
+	}
+
+	//Adds a sample to the key's ring, once the ring is full and can't grow the oldest sample is forgotten
+	public void add(int id, long time, double value) {
+		if (id >= fTimes.length) {
+			int size = Math.max(fTimes.length * 2, id + 1);
+
+			fTimes = Arrays.copyOf(fTimes, size);
+			fValues = Arrays.copyOf(fValues, size);
+			fHeads = Arrays.copyOf(fHeads, size);
+			fCounts = Arrays.copyOf(fCounts, size);
+		}
+
+		if (fTimes[id] == null) {
+			if (!allocate(sInitialCapacity)) {
+				return;
+			}
+
+			fTimes[id] = new long[sInitialCapacity];
+			fValues[id] = new double[sInitialCapacity];
+		}
+
+		int capacity = fTimes[id].length;
+		if (fCounts[id] == capacity && capacity < fCapacity) {
+			grow(id, Math.min(capacity * 2, fCapacity));
+			capacity = fTimes[id].length;
+		}
+
+		int index;
+		if (fCounts[id] < capacity) {
+			index = (fHeads[id] + fCounts[id]++) % capacity;
+		} else {
+			index = fHeads[id];
+			fHeads[id] = (fHeads[id] + 1) % capacity;
+		}
+
+		fTimes[id][index] = time;
+		fValues[id][index] = value;
+	}
+
+	//Doubles the ring if the budget allows it, the samples are copied oldest first
+	private void grow(int id, int capacity) {
+		int oldCapacity = fTimes[id].length;
+
+		if (!allocate(capacity - oldCapacity)) {
+			return;
+		}
+
+		long[] times = new long[capacity];
+		double[] values = new double[capacity];
+		int head = fHeads[id];
+
+		System.arraycopy(fTimes[id], head, times, 0, oldCapacity - head);
+		System.arraycopy(fTimes[id], 0, times, oldCapacity - head, head);
+		System.arraycopy(fValues[id], head, values, 0, oldCapacity - head);
+		System.arraycopy(fValues[id], 0, values, oldCapacity - head, head);
+
+		fTimes[id] = times;
+		fValues[id] = values;
+		fHeads[id] = 0;
+	}
+
+	private boolean allocate(int samples) {
+		if (fAllocated + (long) samples * sSampleSize > fBudget) {
+			return false;
+		}
+
+		fAllocated += (long) samples * sSampleSize;
+		return true;
+	}
+
+	//Fills the window with at most the limit of the key's samples between the times, oldest first
+	//Samples are only added when a value changes, so the value a key had at the start time is added at the start time
+	//and the value it has at the end time is added at the end time, a steady key still gets a line across the whole window
+	//If there are more samples than the limit they are split into buckets and each bucket adds its smallest and largest value
+	public void query(int id, long startTime, long endTime, int limit, Window window) {
+		window.clear(limit);
+
+		if (id < 0 || id >= fTimes.length || fTimes[id] == null) {
+			return;
+		}
+
+		int first = find(id, startTime);
+		int end = find(id, endTime + 1);
+		int samples = end - first;
+
+		//The edges take their places in the window before the samples between them are downsampled
+		boolean startEdge = first > 0 && (first == end || getTime(id, first) > startTime);
+		boolean endEdge = end > 0 && getTime(id, end - 1) < endTime;
+		int bodyLimit = window.fLimit - (startEdge ? 1 : 0) - (endEdge ? 1 : 0);
+
+		if (startEdge) {
+			addToWindow(startTime, getValue(id, first - 1), window);
+		}
+
+		if (samples <= bodyLimit) {
+			for (int i = first; i < end; i++) {
+				addToWindow(id, i, window);
+			}
+		} else {
+			int buckets = bodyLimit / 2;
+			for (int bucket = 0; bucket < buckets; bucket++) {
+				int bucketStart = first + (int) ((long) samples * bucket / buckets);
+				int bucketEnd = first + (int) ((long) samples * (bucket + 1) / buckets);
+
+				int min = bucketStart;
+				int max = bucketStart;
+				for (int i = bucketStart + 1; i < bucketEnd; i++) {
+					double value = getValue(id, i);
+
+					if (value < getValue(id, min)) {
+						min = i;
+					}
+					if (value > getValue(id, max)) {
+						max = i;
+					}
+				}
+
+				//The two are added in the order they happened so the line between them is drawn the right way
+				addToWindow(id, Math.min(min, max), window);
+				if (min != max) {
+					addToWindow(id, Math.max(min, max), window);
+				}
+			}
+		}
+
+		if (endEdge) {
+			addToWindow(endTime, getValue(id, end - 1), window);
+		}
+	}
+
+	//The position, oldest first, of the first sample at or after the time
+	private int find(int id, long time) {
+		int low = 0;
+		int high = fCounts[id];
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+
+			if (getTime(id, middle) < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	private long getTime(int id, int position) {
+		return fTimes[id][(fHeads[id] + position) % fTimes[id].length];
+	}
+
+	private double getValue(int id, int position) {
+		return fValues[id][(fHeads[id] + position) % fValues[id].length];
+	}
+
+	private void addToWindow(int id, int position, Window window) {
+		addToWindow(getTime(id, position), getValue(id, position), window);
+	}
+
+	private void addToWindow(long time, double value, Window window) {
+		window.fTimes[window.fSize] = time;
+		window.fValues[window.fSize] = value;
+		window.fSize++;
+	}
+
+	//The bytes used by every ring
+	public long getAllocated() {
+		return fAllocated;
+	}
+
+	/**
+	 * Window holds the samples returned by a query, it is reused between queries
+	 */
+
+	public static class Window {
+
+		private final long[] fTimes;
+		private final double[] fValues;
+		private int fLimit;
+		private int fSize;
+
+		//The capacity is the most samples a query can return
+		public Window(int capacity) {
+			fTimes = new long[Math.max(capacity, 2)];
+			fValues = new double[Math.max(capacity, 2)];
+			fLimit = fTimes.length;
+			fSize = 0;
+		}
+
+		//Empties the window, it holds at most the limit or its capacity, whichever is smaller
+		private void clear(int limit) {
+			fLimit = Math.max(2, Math.min(limit, fTimes.length));
+			fSize = 0;
+		}
+
+		public int size() {
+			return fSize;
+		}
+
+		public long getTime(int i) {
+			return fTimes[i];
+		}
+
+		public double getValue(int i) {
+			return fValues[i];
+		}
+	}
+}
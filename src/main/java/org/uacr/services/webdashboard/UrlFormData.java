@@ -6,23 +6,124 @@ import java.util.HashMap;
  * UrlFormData is a utility to create, store, and export data in url-encoded form
  * The url-encoded form allow for easy transfer of data over a websocket
  *
+ * "%", "&" and "=" in keys and values are escaped as "%25", "%26" and "%3D" so any text can be sent,
+ * every other character, including the "~" and "*" separators pages use inside values, is sent as is
+ * Parsing is one pass over the data that only copies when a key or value has something to unescape,
+ * the static append methods write a message straight into a builder without filling a map first
+ *
  * @author Matthew Oates
  */
 
 public class UrlFormData extends HashMap<String, String> {
 
+	private static final char[] sHexDigits = "0123456789ABCDEF".toCharArray();
+
+	//Reused to unescape keys and values while parsing
+	private final transient StringBuilder fDecoded;
+
 	public UrlFormData() {
 		this("");
 	}
 
 	public UrlFormData(String data) {
+		fDecoded = new StringBuilder();
 		parse(data);
 	}
 
-	public void parse(String data) {
-		for (String part : data.split("&")) {
-			if (part.contains("=")) put(part.split("=")[0], part.split("=")[1]);
+	//Adds every "key=value" pair, a value is everything after the first "=" so it can hold more of them
+	//Pairs without an "=" are skipped
+	public void parse(CharSequence data) {
+		parse(data, 0, data.length());
+	}
+
+	public void parse(CharSequence data, int start, int end) {
+		//The next "=" and "%" are only searched for again once the pairs have moved past them,
+		//so a message is scanned once however its pairs are laid out
+		int equals = -1;
+		int escape = -1;
+		int pairStart = start;
+
+		while (pairStart < end) {
+			int ampersand = indexOf(data, '&', pairStart, end);
+
+			if (equals < pairStart) {
+				equals = indexOf(data, '=', pairStart, end);
+			}
+
+			if (equals < ampersand) {
+				if (escape < pairStart) {
+					escape = indexOf(data, '%', pairStart, end);
+				}
+				String key = decode(data, pairStart, equals, escape);
+
+				if (escape <= equals) {
+					escape = indexOf(data, '%', equals + 1, end);
+				}
+				put(key, decode(data, equals + 1, ampersand, escape));
+			}
+
+			pairStart = ampersand + 1;
+		}
+	}
+
+	//The index of the first c from the start, or the end if there isn't one before it
+	private static int indexOf(CharSequence data, char c, int start, int end) {
+		if (data instanceof String) {
+			int index = ((String) data).indexOf(c, start);
+
+			return index < 0 || index > end ? end : index;
+		}
+
+		for (int i = start; i < end; i++) {
+			if (data.charAt(i) == c) {
+				return i;
+			}
+		}
+
+		return end;
+	}
+
+	//Unescapes part of the data given the index of the first "%" in it or after it,
+	//a "%" that isn't followed by two hex digits is kept as is
+	private String decode(CharSequence data, int start, int end, int escape) {
+		if (escape >= end) {
+			return data.subSequence(start, end).toString();
+		}
+
+		fDecoded.setLength(0);
+		fDecoded.append(data, start, escape);
+
+		for (int i = escape; i < end; i++) {
+			char c = data.charAt(i);
+
+			if (c == '%' && i + 2 < end) {
+				int high = getHexValue(data.charAt(i + 1));
+				int low = getHexValue(data.charAt(i + 2));
+
+				if (high >= 0 && low >= 0) {
+					fDecoded.append((char) (high << 4 | low));
+					i += 2;
+					continue;
+				}
+			}
+
+			fDecoded.append(c);
+		}
+
+		return fDecoded.toString();
+	}
+
+	//The value of an ascii hex digit, or -1 if it isn't one
+	private static int getHexValue(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		} else if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		} else if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
 		}
+
+		return -1;
 	}
 
 	public UrlFormData add(String key, String value) {
@@ -31,14 +132,52 @@ public class UrlFormData extends HashMap<String, String> {
 	}
 
 	public String getData() {
-		StringBuilder data = new StringBuilder();
+		return appendTo(new StringBuilder()).toString();
+	}
 
+	//Appends every pair to the builder, see append
+	public StringBuilder appendTo(StringBuilder builder) {
 		for (Entry<String, String> entry : entrySet()) {
-			data.append(entry.getKey() + "=" + entry.getValue() + "&");
+			append(builder, entry.getKey(), entry.getValue());
+		}
+
+		return builder;
+	}
+
+	//Appends an escaped "key=value" pair to a message being built, pairs after the first are preceded by a "&"
+	public static StringBuilder append(StringBuilder builder, String key, CharSequence value) {
+		return append(builder, key, value, 0, value.length());
+	}
+
+	//Appends a pair whose value is part of a larger sequence, so a builder doesn't need to be copied to trim it
+	public static StringBuilder append(StringBuilder builder, String key, CharSequence value, int start, int end) {
+		if (builder.length() > 0) {
+			builder.append('&');
 		}
 
-		if (data.length() == 0) return "";
+		appendEscaped(builder, key, 0, key.length());
+		builder.append('=');
+		appendEscaped(builder, value, start, end);
+
+		return builder;
+	}
+
+	//Copies runs of plain characters at once and escapes the characters between them
+	private static void appendEscaped(StringBuilder builder, CharSequence text, int start, int end) {
+		int run = start;
+
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+
+			if (c == '%' || c == '&' || c == '=') {
+				builder.append(text, run, i)
+						.append('%')
+						.append(sHexDigits[c >> 4])
+						.append(sHexDigits[c & 0xF]);
+				run = i + 1;
+			}
+		}
 
-		return data.substring(0, data.length() - 1);
+		builder.append(text, run, end);
 	}
-}
\ No newline at end of file
+}
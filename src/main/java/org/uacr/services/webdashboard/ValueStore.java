@@ -0,0 +1,167 @@
+package org.uacr.services.webdashboard;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * ValueStore keeps the last broadcast input and output values in slots indexed by their KeyTable id
+ * Each update compares the new values against the slots in place and records the ids that changed in a dirty set,
+ * so finding the changes each tick doesn't copy the value maps or box any numbers
+ */
+
+public class ValueStore {
+
+	public static final int NUMERIC = 0;
+	public static final int BOOLEAN = 1;
+	public static final int STRING = 2;
+	public static final int VECTOR = 3;
+	public static final int OUTPUT = 4;
+
+	private static final int sTypes = 5;
+
+	private final KeyTable fKeyTable;
+	private final BitSet[] fPresent;
+	private final BitSet[] fSeen;
+	private final BitSet fAllPresent;
+	private final BitSet fDirty;
+	private double[] fNumerics;
+	private boolean[] fBooleans;
+	private Object[][] fObjects;
+
+	public ValueStore(KeyTable keyTable) {
+		fKeyTable = keyTable;
+		fPresent = new BitSet[sTypes];
+		fSeen = new BitSet[sTypes];
+		fAllPresent = new BitSet();
+		fDirty = new BitSet();
+
+		for (int type = 0; type < sTypes; type++) {
+			fPresent[type] = new BitSet();
+			fSeen[type] = new BitSet();
+		}
+
+		fNumerics = new double[256];
+		fBooleans = new boolean[256];
+		fObjects = new Object[sTypes][256];
+	}
+
+	//Compares every value against the last update, the ids of values that changed or appeared are marked dirty
+	public void update(Map<String, Double> numerics, Map<String, Boolean> booleans, Map<String, String> strings, Map<String, Map<String, Double>> vectors, Map<String, Object> outputs) {
+		for (int type = 0; type < sTypes; type++) {
+			fSeen[type].clear();
+		}
+		fDirty.clear();
+
+		for (Map.Entry<String, Double> value : numerics.entrySet()) {
+			int id = slot(NUMERIC, value.getKey());
+			double number = value.getValue();
+
+			//Compared by bits so NaN matches itself the way Double.equals does
+			if (!fPresent[NUMERIC].get(id) || Double.doubleToLongBits(fNumerics[id]) != Double.doubleToLongBits(number)) {
+				fNumerics[id] = number;
+				fDirty.set(id);
+			}
+		}
+
+		for (Map.Entry<String, Boolean> value : booleans.entrySet()) {
+			int id = slot(BOOLEAN, value.getKey());
+			boolean bool = value.getValue();
+
+			if (!fPresent[BOOLEAN].get(id) || fBooleans[id] != bool) {
+				fBooleans[id] = bool;
+				fDirty.set(id);
+			}
+		}
+
+		updateObjects(STRING, strings);
+		updateObjects(VECTOR, vectors);
+		updateObjects(OUTPUT, outputs);
+
+		//Values that are no longer reported are dropped so they aren't part of snapshots
+		fAllPresent.clear();
+		for (int type = 0; type < sTypes; type++) {
+			fPresent[type].clear();
+			fPresent[type].or(fSeen[type]);
+			fAllPresent.or(fSeen[type]);
+		}
+	}
+
+	private void updateObjects(int type, Map<String, ?> values) {
+		for (Map.Entry<String, ?> value : values.entrySet()) {
+			int id = slot(type, value.getKey());
+
+			if (!fPresent[type].get(id) || !value.getValue().equals(fObjects[type][id])) {
+				fObjects[type][id] = value.getValue();
+				fDirty.set(id);
+			}
+		}
+	}
+
+	//Returns the id of the key and marks it as reported this update, growing the slots if the id is new
+	private int slot(int type, String key) {
+		int id = fKeyTable.getId(key);
+
+		if (id >= fNumerics.length) {
+			int capacity = Math.max(fNumerics.length * 2, id + 1);
+
+			fNumerics = Arrays.copyOf(fNumerics, capacity);
+			fBooleans = Arrays.copyOf(fBooleans, capacity);
+			for (int t = 0; t < sTypes; t++) {
+				fObjects[t] = Arrays.copyOf(fObjects[t], capacity);
+			}
+		}
+
+		fSeen[type].set(id);
+
+		return id;
+	}
+
+	//The ids of the values that changed in the last update
+	public BitSet getDirty() {
+		return fDirty;
+	}
+
+	//The ids of every value reported by the last update
+	public BitSet getPresent() {
+		return fAllPresent;
+	}
+
+	//Whether the last update reported a value of the type for the id
+	public boolean has(int type, int id) {
+		return fPresent[type].get(id);
+	}
+
+	public double getNumeric(int id) {
+		return fNumerics[id];
+	}
+
+	public boolean getBoolean(int id) {
+		return fBooleans[id];
+	}
+
+	public String getString(int id) {
+		return (String) getObject(STRING, id);
+	}
+
+	@SuppressWarnings("unchecked")
+	public Map<String, Double> getVector(int id) {
+		return (Map<String, Double>) getObject(VECTOR, id);
+	}
+
+	public Object getOutput(int id) {
+		return getObject(OUTPUT, id);
+	}
+
+	private Object getObject(int type, int id) {
+		@Nullable
+		Object value = fObjects[type][id];
+
+		if (value == null) {
+			throw new IllegalStateException("No value for key " + fKeyTable.getName(id));
+		}
+
+		return value;
+	}
+}
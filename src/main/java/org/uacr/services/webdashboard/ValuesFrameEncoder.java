@@ -0,0 +1,114 @@
+package org.uacr.services.webdashboard;
+
+import org.uacr.services.webdashboard.websocket.WebSocket;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * ValuesFrameEncoder builds the values page frames out of the ValueStore in the text, interned and binary encodings
+ * WebsocketServer builds each frame once a broadcast and shares it between the clients it applies to,
+ * the benchmarks call the same methods so they measure what a broadcast does
+ */
+
+class ValuesFrameEncoder {
+
+	static final int TEXT = 0;
+	static final int INTERNED = 1;
+	static final int BINARY = 2;
+
+	private final KeyTable fKeyTable;
+	private final ValueStore fValues;
+	private final BinaryValuesEncoder fBinaryEncoder;
+	private final StringBuilder fValuesBuilder;
+	//Values are escaped into this and framed, so a large value isn't copied into a map and joined again
+	private final StringBuilder fFrameBuilder;
+
+	ValuesFrameEncoder(KeyTable keyTable, ValueStore values) {
+		fKeyTable = keyTable;
+		fValues = values;
+		fBinaryEncoder = new BinaryValuesEncoder();
+		fValuesBuilder = new StringBuilder();
+		fFrameBuilder = new StringBuilder();
+	}
+
+	//Builds a frame of the current value of each subscribed id in the encoding, or returns null if none of the ids are subscribed
+	@Nullable
+	ByteBuffer encode(int encoding, BitSet ids, Subscription subscription) {
+		if (encoding == BINARY) {
+			fBinaryEncoder.reset();
+			putValues(fBinaryEncoder, ids, subscription);
+
+			return fBinaryEncoder.isEmpty() ? null : fBinaryEncoder.toFrame();
+		}
+
+		fValuesBuilder.setLength(0);
+		appendValues(fValuesBuilder, encoding == INTERNED, ids, subscription);
+
+		return fValuesBuilder.length() == 0 ? null : createValuesFrame(fValuesBuilder);
+	}
+
+	//Appends the current value of each subscribed id as text
+	private void appendValues(StringBuilder builder, boolean interned, BitSet ids, Subscription subscription) {
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			if (!subscription.contains(id)) continue;
+
+			Object key = interned ? (Object) id : fKeyTable.getName(id);
+
+			if (fValues.has(ValueStore.NUMERIC, id)) appendNumeric(builder, key, fValues.getNumeric(id));
+			if (fValues.has(ValueStore.BOOLEAN, id)) appendBoolean(builder, key, fValues.getBoolean(id));
+			if (fValues.has(ValueStore.STRING, id)) appendString(builder, key, fValues.getString(id));
+			if (fValues.has(ValueStore.VECTOR, id)) appendVector(builder, key, fValues.getVector(id));
+			if (fValues.has(ValueStore.OUTPUT, id)) appendOutput(builder, key, fValues.getOutput(id));
+		}
+	}
+
+	//Writes the current value of each subscribed id as binary records
+	private void putValues(BinaryValuesEncoder encoder, BitSet ids, Subscription subscription) {
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			if (!subscription.contains(id)) continue;
+
+			if (fValues.has(ValueStore.NUMERIC, id)) encoder.putNumeric(id, fValues.getNumeric(id));
+			if (fValues.has(ValueStore.BOOLEAN, id)) encoder.putBoolean(id, fValues.getBoolean(id));
+			if (fValues.has(ValueStore.STRING, id)) encoder.putString(id, fValues.getString(id));
+			if (fValues.has(ValueStore.VECTOR, id)) encoder.putVector(id, fValues.getVector(id));
+			if (fValues.has(ValueStore.OUTPUT, id)) encoder.putOutput(id, fValues.getOutput(id));
+		}
+	}
+
+	//Frames a values message from a builder of values each followed by a "~"
+	private ByteBuffer createValuesFrame(StringBuilder values) {
+		fFrameBuilder.setLength(0);
+		UrlFormData.append(fFrameBuilder, "response", "values");
+		UrlFormData.append(fFrameBuilder, "values", values, 0, Math.max(values.length() - 1, 0));
+
+		return WebSocket.textFrame(fFrameBuilder.toString());
+	}
+
+	//Text clients are sent the key name, interned clients are sent the key id
+	private static void appendNumeric(StringBuilder builder, Object key, double value) {
+		builder.append("numeric*").append(key).append("*").append(String.format("%6f", value)).append("~");
+	}
+
+	private static void appendBoolean(StringBuilder builder, Object key, boolean value) {
+		builder.append("boolean*").append(key).append("*").append(value).append("~");
+	}
+
+	private static void appendString(StringBuilder builder, Object key, String value) {
+		builder.append("string*").append(key).append("*").append(value).append("~");
+	}
+
+	private static void appendVector(StringBuilder builder, Object key, Map<String, Double> value) {
+		builder.append("vector*").append(key);
+		for (Map.Entry<String, Double> v : value.entrySet()) {
+			builder.append("*").append(v.getKey()).append(": ").append(v.getValue());
+		}
+		builder.append("~");
+	}
+
+	private static void appendOutput(StringBuilder builder, Object key, Object value) {
+		builder.append("output*").append(key).append("*").append(value).append("~");
+	}
+}
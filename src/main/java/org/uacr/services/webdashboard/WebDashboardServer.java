@@ -4,6 +4,9 @@ import org.uacr.shared.abstractions.*;
 import org.uacr.utilities.logging.LogManager;
 import org.uacr.utilities.logging.Logger;
 
+import java.nio.file.Paths;
+import java.util.Map;
+
 /**
  * WebDashboardServer creates and manages a WebsocketServer on the correct ip
  *
@@ -13,17 +16,31 @@ import org.uacr.utilities.logging.Logger;
 public class WebDashboardServer {
 
 	private static final Logger sLogger = LogManager.getLogger(WebDashboardServer.class);
+	//Serves both the pages and their websockets
 	private static final int sPort = 5800;
 
-	private WebHttpServer fWebHttpServer;
 	private WebsocketServer fWebsocketServer;
+	private RobotConfiguration fRobotConfiguration;
 
 	public WebDashboardServer(EventBus eventBus, FMS fms, InputValues inputValues, OutputValues outputValues, RobotConfiguration robotConfiguration) {
-		fWebHttpServer = new WebHttpServer(sPort);
-		fWebsocketServer = new WebsocketServer(sPort + 1, eventBus, fms, inputValues, outputValues, robotConfiguration);
+		fWebsocketServer = new WebsocketServer(sPort, eventBus, fms, inputValues, outputValues, robotConfiguration);
+		fRobotConfiguration = robotConfiguration;
 	}
 
 	public void start() {
+		//Setting "replay_session" to a recording's path serves the values and match pages from the recording instead of the robot
+		Map<String, Object> config = fRobotConfiguration.getCategory("global_webdashboard");
+		if (config.get("replay_session") instanceof String) {
+			String file = (String) config.get("replay_session");
+
+			try {
+				fWebsocketServer.setReplay(new SessionReplay(Paths.get(file)));
+				sLogger.info("Replaying session " + file);
+			} catch (Exception e) {
+				sLogger.error("Couldn't replay session " + file + ": " + e.getMessage());
+			}
+		}
+
 		fWebsocketServer.initialize();
 	}
 
@@ -32,6 +49,6 @@ public class WebDashboardServer {
 	}
 
 	public void stop() {
-
+		fWebsocketServer.stop();
 	}
 }
@@ -21,7 +21,7 @@ public class WebDashboardService implements ScheduledService {
 	private final InputValues fSharedInputValues;
 	private final RobotConfiguration fRobotConfiguration;
 	private WebDashboardServer fWebDashboardServer;
-	private double fPreviousTime;
+	private long fPreviousTime;
 	private long FRAME_TIME_THRESHOLD;
 
 	@Inject
@@ -36,7 +36,7 @@ public class WebDashboardService implements ScheduledService {
 	public void startUp() throws Exception {
 		sLogger.debug("Starting WebDashboardService");
 
-		fPreviousTime = System.currentTimeMillis();
+		fPreviousTime = System.nanoTime();
 		FRAME_TIME_THRESHOLD = fRobotConfiguration.getInt("global_timing", "frame_time_threshold_webdashboard_service");
 
 		fWebDashboardServer.start();
@@ -46,14 +46,14 @@ public class WebDashboardService implements ScheduledService {
 	@Override
 	public void runOneIteration() throws Exception {
 
-		double frameStartTime = System.currentTimeMillis();
+		long frameStartTime = System.nanoTime();
 
 		fWebDashboardServer.update();
 
-		// Check for delayed frames
-		double currentTime = System.currentTimeMillis();
-		double frameTime = currentTime - frameStartTime;
-		double totalCycleTime = currentTime - fPreviousTime;
+		// Check for delayed frames, measured in nanoseconds and reported in milliseconds
+		long currentTime = System.nanoTime();
+		double frameTime = (currentTime - frameStartTime) / 1000000.0;
+		double totalCycleTime = (currentTime - fPreviousTime) / 1000000.0;
 		fSharedInputValues.setNumeric("ipn_frame_time_webdashboard_service", frameTime);
 		if (frameTime > FRAME_TIME_THRESHOLD) {
 			sLogger.debug("********** WebDashboard Service frame time = {}", frameTime);
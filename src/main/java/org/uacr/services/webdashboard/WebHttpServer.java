@@ -1,102 +1,218 @@
 package org.uacr.services.webdashboard;
 
-import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpServer;
+import org.uacr.services.webdashboard.websocket.Headers;
+import org.uacr.services.webdashboard.websocket.HttpResponse;
+import org.uacr.utilities.logging.LogManager;
+import org.uacr.utilities.logging.Logger;
 
 import javax.annotation.Nullable;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * WebHttpServer answers the web dashboard page requests made to the websocket server's port
+ * Every page is a cached asset, so a request is answered with a shared buffer and never blocks the selector thread
+ * Log journal segments are answered with a view of the mapping the journal already holds instead of reading the file
+ */
 
 public class WebHttpServer {
 
+	private static final Logger sLogger = LogManager.getLogger(WebHttpServer.class);
+
+	private final StaticAssets fAssets;
 	@Nullable
-	private HttpServer fHttpServer;
+	private volatile LogJournal fLogJournal;
+	@Nullable
+	private volatile DashboardMetrics fMetrics;
 
-	public WebHttpServer(int port) {
-		try {
-			fHttpServer = HttpServer.create(new InetSocketAddress(port), 8);
+	public WebHttpServer() {
+		fAssets = new StaticAssets("webdashboard");
+		fLogJournal = null;
+		fMetrics = null;
+	}
 
-			fHttpServer.createContext("/", (e) -> {
-				fullWrite(e, readFile("webdashboard/webdashboard.html"));
+	//The journal served under "/log/journal", set once it has been opened
+	public void setLogJournal(LogJournal logJournal) {
+		fLogJournal = logJournal;
+	}
 
-				e.close();
-			});
+	//The metrics served as plain text under "/metrics"
+	public void setMetrics(DashboardMetrics metrics) {
+		fMetrics = metrics;
+	}
 
-			fHttpServer.createContext("/pages", (e) -> {
-				if (e.getRequestURI().getPath().contains("css") || e.getRequestURI().getPath().contains("ttf")) {
-					e.getResponseHeaders().add("content-type", "text/css");
-				}
-				if (e.getRequestURI().getPath().contains("js")) {
-					e.getResponseHeaders().add("content-type", "text/javascript");
-				}
-				e.getResponseHeaders().add("x-frame-options", "SAMEORIGIN");
+	//Routes the request to its page and logs how long it took
+	public HttpResponse handle(String method, String target, Headers headers) {
+		long startTime = System.nanoTime();
+
+		//The query string isn't used by any page
+		String path = target.split("\\?", 2)[0];
+
+		HttpResponse response;
+		if (path.startsWith("/pages/")) {
+			response = getAsset(path.substring("/pages/".length()), headers);
+			response.getHeaders().put("x-frame-options", "SAMEORIGIN");
+		} else if (path.equals("/metrics")) {
+			response = getMetrics();
+		} else if (path.equals("/log/journal")) {
+			response = getJournalIndex();
+		} else if (path.startsWith("/log/journal/")) {
+			response = getJournalSegment(path.substring("/log/journal/".length()), headers);
+		} else if (path.startsWith("/match")) {
+			response = getAsset("webdashboard/match/match.html", headers);
+		} else if (path.startsWith("/log")) {
+			response = getAsset("webdashboard/log/log.html", headers);
+		} else if (path.startsWith("/sim")) {
+			response = getAsset("webdashboard/sim/sim.html", headers);
+		} else {
+			response = getAsset("webdashboard/webdashboard.html", headers);
+		}
 
-				fullWrite(e, readFile(e.getRequestURI().getPath().split("/pages/", 2)[1]));
+		sLogger.debug("{} {} {} in {} ms", method, path, response.getStatus(), (System.nanoTime() - startTime) / 1000000.0);
 
-				e.close();
-			});
+		return response;
+	}
 
-			fHttpServer.createContext("/match", (e) -> {
-				fullWrite(e, readFile("webdashboard/match/match.html"));
+	//The metrics published for the last interval, one "name value" line each
+	private HttpResponse getMetrics() {
+		@Nullable
+		DashboardMetrics metrics = fMetrics;
 
-				e.close();
-			});
+		if (metrics == null) {
+			return new HttpResponse(404, "Not Found");
+		}
 
-			fHttpServer.createContext("/log", (e) -> {
-				fullWrite(e, readFile("webdashboard/log/log.html"));
+		HttpResponse response = new HttpResponse(200, "OK", ByteBuffer.wrap(metrics.getText().getBytes(StandardCharsets.UTF_8)));
+		response.getHeaders().put("content-type", "text/plain; charset=utf-8");
+		response.getHeaders().put("cache-control", "no-store");
+		return response;
+	}
 
-				e.close();
-			});
+	//Lists the journal's levels and segments as json, oldest segment first
+	private HttpResponse getJournalIndex() {
+		@Nullable
+		LogJournal journal = fLogJournal;
 
-			fHttpServer.createContext("/sim", (e) -> {
-				fullWrite(e, readFile("webdashboard/sim/sim.html"));
+		if (journal == null) {
+			return new HttpResponse(404, "Not Found");
+		}
 
-				e.close();
-			});
+		StringBuilder json = new StringBuilder("{\"levels\":[");
+		for (LogManager.Level level : LogManager.Level.values()) {
+			json.append(level.ordinal() == 0 ? "" : ",").append("\"").append(level.name()).append("\"");
+		}
 
-			fHttpServer.start();
-		} catch (Exception e) {
-			e.printStackTrace();
+		json.append("],\"segments\":[");
+		boolean first = true;
+		for (LogJournal.Segment segment : journal.getSegments()) {
+			json.append(first ? "" : ",")
+					.append("{\"name\":\"").append(segment.getName())
+					.append("\",\"sequence\":").append(segment.getFirstSequence())
+					.append(",\"time\":").append(segment.getFirstTime())
+					.append(",\"length\":").append(segment.getLength())
+					.append(",\"records\":").append(segment.getRecords())
+					.append("}");
+			first = false;
 		}
+		json.append("]}");
+
+		HttpResponse response = new HttpResponse(200, "OK", ByteBuffer.wrap(json.toString().getBytes(StandardCharsets.UTF_8)));
+		response.getHeaders().put("content-type", "application/json");
+		response.getHeaders().put("cache-control", "no-store");
+		return response;
 	}
 
-	//Reads entire file
-	private static byte[] readFile(String path) {
-		try {
-			@Nullable
-			InputStream fis = WebHttpServer.class.getClassLoader().getResourceAsStream(path);
-			byte[] r = new byte[0];
-			if (fis != null) {
-				r = fis.readAllBytes();
-				fis.read(r);
-				fis.close();
+	//Sends a segment straight from its memory mapping, a "Range" header reads part of it
+	private HttpResponse getJournalSegment(String name, Headers headers) {
+		@Nullable
+		LogJournal journal = fLogJournal;
+		@Nullable
+		LogJournal.Segment segment = journal != null ? journal.getSegment(name) : null;
+
+		if (journal == null || segment == null) {
+			return new HttpResponse(404, "Not Found");
+		}
+
+		ByteBuffer body = journal.read(segment);
+		int length = body.remaining();
+
+		HttpResponse response;
+
+		@Nullable
+		String range = headers.getHeader("range");
+		if (range == null) {
+			response = new HttpResponse(200, "OK", body);
+			response.getHeaders().put("content-disposition", "attachment; filename=\"" + name.replace('/', '-') + "\"");
+		} else {
+			//Only a single "bytes=start-end", "bytes=start-" or "bytes=-suffix" range is supported
+			long start = -1;
+			long end = -1;
+			if (range.startsWith("bytes=") && !range.contains(",")) {
+				String[] bounds = range.substring("bytes=".length()).trim().split("-", -1);
+
+				try {
+					if (bounds.length == 2 && bounds[0].isEmpty()) {
+						start = Math.max(0, length - Long.parseLong(bounds[1]));
+						end = length - 1;
+					} else if (bounds.length == 2) {
+						start = Long.parseLong(bounds[0]);
+						end = bounds[1].isEmpty() ? length - 1 : Math.min(Long.parseLong(bounds[1]), length - 1);
+					}
+				} catch (NumberFormatException e) {
+					start = -1;
+				}
+			}
+
+			if (start < 0 || start > end) {
+				response = new HttpResponse(416, "Range Not Satisfiable");
+				response.getHeaders().put("content-range", "bytes */" + length);
+				return response;
 			}
 
-			return r;
-		} catch (Exception e) {
+			body.position((int) start).limit((int) end + 1);
 
+			response = new HttpResponse(206, "Partial Content", body.slice());
+			response.getHeaders().put("content-range", "bytes " + start + "-" + end + "/" + length);
 		}
 
-		return new byte[0];
+		response.getHeaders().put("content-type", "application/octet-stream");
+		response.getHeaders().put("accept-ranges", "bytes");
+		response.getHeaders().put("cache-control", "no-store");
+		return response;
 	}
 
-	//Writes entire file to HttpExchange
-	private static void fullWrite(HttpExchange e, String r) {
-		try {
-			byte[] bytes = r.getBytes();
-			e.sendResponseHeaders(200, bytes.length);
-			OutputStream body = e.getResponseBody();
-			body.write(bytes);
-			body.flush();
-			body.close();
-		} catch (Exception e1) {
+	//Answers with a cached asset, browsers revalidate with the ETag and get a 304 if they already have it
+	private HttpResponse getAsset(String path, Headers headers) {
+		@Nullable
+		StaticAssets.Asset asset = fAssets.get(path);
 
+		if (asset == null) {
+			return new HttpResponse(404, "Not Found");
 		}
-	}
 
-	//Writes entire file to HttpExchange
-	private static void fullWrite(HttpExchange e, byte[] r) {
-		fullWrite(e, new String(r));
+		HttpResponse response;
+
+		@Nullable
+		String ifNoneMatch = headers.getHeader("if-none-match");
+		@Nullable
+		String acceptEncoding = headers.getHeader("accept-encoding");
+		@Nullable
+		byte[] gzipped = asset.getGzipped();
+
+		if (ifNoneMatch != null && ifNoneMatch.contains(asset.getETag())) {
+			response = new HttpResponse(304, "Not Modified");
+		} else if (gzipped != null && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+			response = new HttpResponse(200, "OK", ByteBuffer.wrap(gzipped));
+			response.getHeaders().put("content-encoding", "gzip");
+		} else {
+			response = new HttpResponse(200, "OK", ByteBuffer.wrap(asset.getBytes()));
+		}
+
+		response.getHeaders().put("content-type", asset.getContentType());
+		response.getHeaders().put("etag", asset.getETag());
+		response.getHeaders().put("cache-control", "no-cache");
+		response.getHeaders().put("vary", "accept-encoding");
+
+		return response;
 	}
 }
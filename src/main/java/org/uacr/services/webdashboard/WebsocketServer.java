@@ -4,16 +4,22 @@ import org.uacr.events.sim.SimInputBooleanSetEvent;
 import org.uacr.events.sim.SimInputNumericSetEvent;
 import org.uacr.events.sim.SimInputVectorSetEvent;
 import org.uacr.services.webdashboard.websocket.AbstractWebsocketServer;
+import org.uacr.services.webdashboard.websocket.Headers;
+import org.uacr.services.webdashboard.websocket.HttpResponse;
 import org.uacr.services.webdashboard.websocket.WebSocket;
 import org.uacr.shared.abstractions.*;
-import org.uacr.utilities.LimitedSizeQueue;
 import org.uacr.utilities.logging.LogHandler;
 import org.uacr.utilities.logging.LogManager;
 import org.uacr.utilities.logging.Logger;
 import org.uacr.utilities.services.Scheduler;
 
 import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * WebsocketServer connects and communicates with the computer webdashboard server
@@ -24,41 +30,109 @@ import java.util.*;
 public class WebsocketServer extends AbstractWebsocketServer implements LogHandler {
 
 	private static final Logger sLogger = LogManager.getLogger(WebsocketServer.class);
+	private static final int sTextEncoding = ValuesFrameEncoder.TEXT;
+	private static final int sInternedEncoding = ValuesFrameEncoder.INTERNED;
+	private static final int sBinaryEncoding = ValuesFrameEncoder.BINARY;
+	//The broadcasts per second made by WebDashboardService, clients asking for this rate or faster get every broadcast
+	private static final double sBroadcastRate = 60;
+	//The update rates clients can choose from, a requested rate is rounded up to one of these so there are only ever a few rate groups
+	private static final double[] sRates = {sBroadcastRate, 20, 10, 5, 1};
+	//Marks a cached values frame that would have had no values in it
+	private static final ByteBuffer sEmptyFrame = ByteBuffer.allocate(0);
+	//Log messages held between drains, more than this are dropped and counted
+	private static final int sLogCapacity = 1024;
+	//The most messages a log widget is sent when it first reads, or after the match page was closed
+	private static final int sMatchLogBacklog = 100;
+	//Log messages kept for log pages to query, and the most a single query can return
+	private static final int sLogHistory = 16384;
+	private static final int sLogPageSize = 1000;
+	//Longer patterns sent by log pages are refused
+	private static final int sMaxLogPatternLength = 256;
+	private static final int sDefaultJournalSegmentSize = 1024 * 1024;
+	private static final int sDefaultJournalSegments = 8;
+	private static final long sDefaultKeyframeInterval = 1000;
+	//Samples kept for each numeric value, about 5 minutes of changes every broadcast, and the bytes kept for every value together
+	private static final int sHistoryCapacity = 18000;
+	private static final long sHistoryBudget = 32 * 1024 * 1024;
+	//The history a graph is sent when it doesn't ask for a window, and the most points it can be sent for one value
+	private static final long sDefaultHistoryWindow = 5 * 60 * 1000;
+	private static final int sDefaultHistoryPoints = 500;
+	private static final int sHistoryPoints = 2000;
 	private final EventBus fEventBus;
 	private final FMS fFMS;
 	private final InputValues fSharedInputValues;
 	private final OutputValues fSharedOutputValues;
 	private final RobotConfiguration fRobotConfiguration;
 	private final Set<WebSocket> fWebDashboardSockets = new HashSet<>();
-	private final Set<WebSocket> fValuesSockets = new HashSet<>();
-	private final Set<WebSocket> fMatchSockets = new HashSet<>();
+	private final Set<WebSocket> fGraphSockets = new HashSet<>();
+	private final Map<WebSocket, DashboardClient> fValuesClients = new HashMap<>();
+	private final Map<WebSocket, DashboardClient> fMatchClients = new HashMap<>();
 
 	//Web sockets
 	//Connects web page
-	private final Set<WebSocket> fLogSockets = new HashSet<>();
-	private final Map<String, Object> fLastMatchValues = new HashMap<>();
+	//Each log page socket's cursor is the sequence of the next message it will be sent
+	private final Map<WebSocket, Long> fLogCursors = new HashMap<>();
+	//The match widgets that have been sent at least once, and those that had a value when they were last checked
+	private final BitSet fMatchSent = new BitSet();
+	private final BitSet fMatchHadValue = new BitSet();
 	private final Scheduler fLoggingScheduler = new Scheduler(250);
+	private final BroadcastWorker fBroadcastWorker = new BroadcastWorker(this::broadcast);
+	private final WebHttpServer fWebHttpServer = new WebHttpServer();
+	private final DashboardMetrics fMetrics = new DashboardMetrics();
+	private final Scheduler fMetricsScheduler = new Scheduler(1000);
 	private List<String> fAutoOriginList = new ArrayList<>();
 	private List<String> fAutoDestinationList = new ArrayList<>();
 	private List<String> fAutoActionList = new ArrayList<>();
-	private Map<String, Double> fNumerics = new HashMap<>();
-	private Map<String, Boolean> fBooleans = new HashMap<>();
-	private Map<String, String> fStrings = new HashMap<>();
-	private Map<String, Map<String, Double>> fVectors = new HashMap<>();
-	private Map<String, Object> fOutputs = new HashMap<>();
-	private Map<String, Double> fLastNumerics = new HashMap<>();
-	private Map<String, Boolean> fLastBooleans = new HashMap<>();
-	private Map<String, String> fLastStrings = new HashMap<>();
-	private Map<String, Map<String, Double>> fLastVectors = new HashMap<>();
-	private Map<String, Object> fLastOutputs = new HashMap<>();
-	private Map<String, Map<String, Object>> fMatchValues = new HashMap<>();
-	private Queue<Map<String, String>> fLogMessages = new LimitedSizeQueue<>(100);
-	private Queue<Map<String, String>> fWebdashboadLogMessages = new LimitedSizeQueue<>(100);
+	//Indexed by match key table id
+	private MatchWidget[] fMatchWidgets = new MatchWidget[0];
+	private final LogRing fLogMessages = new LogRing(sLogCapacity);
+	private final LogRing.Reader fLogReader = this::storeLogMessage;
+	private final LogStore fLogStore = new LogStore(sLogHistory);
+	private final LogStore.Page fLogPage = new LogStore.Page(sLogPageSize);
+	@Nullable
+	private LogJournal fLogJournal = null;
+	@Nullable
+	private SessionRecorder fSessionRecorder = null;
+	//Plays a recorded session in place of the robot's values
+	@Nullable
+	private SessionReplay fReplay = null;
+	private final Scheduler fReplayScheduler = new Scheduler(250);
+	//The history of every numeric value for graphs opened after the value changed
+	@Nullable
+	private TimeSeriesStore fHistory = null;
+	private final TimeSeriesStore.Window fHistoryWindow = new TimeSeriesStore.Window(sHistoryPoints);
+	private final LogStore.Reader fMatchLogReader = this::appendMatchLogMessage;
+	//Each log widget's cursor into the log store, indexed by match key table id
+	private long[] fMatchLogCursors = new long[0];
+	private long fReportedDroppedLogs = 0;
 	private StringBuilder fMainStringBuilder = new StringBuilder();
 	private StringBuilder fSecondaryStringBuilder = new StringBuilder();
+	private StringBuilder fSnapshotStringBuilder = new StringBuilder();
+	private StringBuilder fInternedSnapshotStringBuilder = new StringBuilder();
+	//Messages are escaped into this and framed, so a large value isn't copied into a map and joined again
+	private final StringBuilder fFrameStringBuilder = new StringBuilder();
+	private final BitSet fMatchDirty = new BitSet();
 	private UrlFormData fSendFormData = new UrlFormData();
 	private UrlFormData fReceiveFormData = new UrlFormData();
-	private Map<String, Object> fAllMatchValues = new HashMap<>();
+	private final KeyTable fKeyTable = new KeyTable();
+	private final ValueStore fValues = new ValueStore(fKeyTable);
+	private final KeyTable fMatchKeyTable = new KeyTable();
+	private final ValuesFrameEncoder fValuesFrameEncoder = new ValuesFrameEncoder(fKeyTable, fValues);
+	private final SubscriptionIndex fSubscriptions = new SubscriptionIndex(fKeyTable);
+	private final Map<Subscription, ByteBuffer[]> fSnapshotFrames = new HashMap<>();
+	private final RateGroup fEveryBroadcast = new RateGroup(0);
+	private final Map<Long, RateGroup> fRateGroups = new HashMap<>(Map.of(0L, fEveryBroadcast));
+	private final KeyDefinitions fBinaryKeyDefinitions = new KeyDefinitions(fKeyTable, (keyTable, start, end) -> {
+		BinaryValuesEncoder encoder = new BinaryValuesEncoder();
+		for (int id = start; id < end; id++) {
+			encoder.putDefine(id, keyTable.getName(id));
+		}
+		return encoder.toFrame();
+	});
+	private final KeyDefinitions fInternedKeyDefinitions = new KeyDefinitions(fKeyTable, (keyTable, start, end) ->
+			createKeyDefinitionFrame("define", "*", "~", keyTable, start, end));
+	private final KeyDefinitions fMatchKeyDefinitions = new KeyDefinitions(fMatchKeyTable, (keyTable, start, end) ->
+			createKeyDefinitionFrame("match_define", "*$#$*", "~$#$~", keyTable, start, end));
 
 	public WebsocketServer(int port, EventBus eventBus, FMS fms, InputValues inputValues, OutputValues outputValues, RobotConfiguration robotConfiguration) {
 		super(port);
@@ -71,15 +145,44 @@ public class WebsocketServer extends AbstractWebsocketServer implements LogHandl
 
 		fSharedInputValues.setString("ips_selected_auto", "No Auto");
 
+		fWebHttpServer.setMetrics(fMetrics);
+
 		LogManager.addLogHandler(this);
 	}
 
+	//Serves the values and match pages from a recording instead of the robot, must be set before the server is initialized
+	public void setReplay(SessionReplay replay) {
+		fReplay = replay;
+	}
+
 	public void initialize() {
 		Map<String, Object> config = fRobotConfiguration.getCategory("global_webdashboard");
 
+		//The match values are compiled once so broadcasts don't look through the config
 		Object matchValuesConfig = config.get("match_values");
 		if (matchValuesConfig instanceof HashMap) {
-			fMatchValues = (Map<String, Map<String, Object>>) matchValuesConfig;
+			List<MatchWidget> widgets = new ArrayList<>();
+
+			for (Map.Entry<String, Map<String, Object>> matchValue : ((Map<String, Map<String, Object>>) matchValuesConfig).entrySet()) {
+				MatchWidget widget;
+				try {
+					widget = MatchWidget.compile(matchValue.getKey(), matchValue.getValue(), fMatchKeyTable, fKeyTable);
+				} catch (IllegalArgumentException e) {
+					sLogger.error("Skipping match value " + matchValue.getKey() + ": " + e.getMessage());
+					continue;
+				}
+
+				//Widgets are indexed by the id of their display name and the match page shows one widget per name,
+				//so only the first entry with a display name is kept
+				if (widget.getId() < widgets.size()) {
+					sLogger.error("Skipping match value " + matchValue.getKey() + ": it has the same display name as another match value");
+				} else {
+					widgets.add(widget);
+				}
+			}
+
+			fMatchWidgets = widgets.toArray(new MatchWidget[0]);
+			fMatchLogCursors = new long[fMatchWidgets.length];
 		}
 
 		Object autoSelectorObject = config.get("auto_selector");
@@ -91,207 +194,766 @@ public class WebsocketServer extends AbstractWebsocketServer implements LogHandl
 			fAutoActionList = autoSelector.get("actions");
 		}
 
+		//Every log message can be journaled to disk with "log_journal" or by setting "log_journal_directory",
+		//the segment size in bytes and number of segments kept can be set with "log_journal_segment_size" and "log_journal_segments"
+		if (Boolean.TRUE.equals(config.get("log_journal")) || config.get("log_journal_directory") instanceof String) {
+			Path directory = Paths.get(System.getProperty("user.home"), "webdashboard_logs");
+			if (config.get("log_journal_directory") instanceof String) {
+				directory = Paths.get((String) config.get("log_journal_directory"));
+			}
+
+			int segmentSize = sDefaultJournalSegmentSize;
+			if (config.get("log_journal_segment_size") instanceof Number) {
+				segmentSize = ((Number) config.get("log_journal_segment_size")).intValue();
+			}
+
+			int segments = sDefaultJournalSegments;
+			if (config.get("log_journal_segments") instanceof Number) {
+				segments = ((Number) config.get("log_journal_segments")).intValue();
+			}
+
+			try {
+				fLogJournal = new LogJournal(directory, segmentSize, segments);
+				fWebHttpServer.setLogJournal(fLogJournal);
+			} catch (Exception e) {
+				sLogger.error("Couldn't open the log journal in " + directory + ": " + e.getMessage());
+			}
+		}
+
+		//Every value change can be recorded for debugging with "record_session",
+		//"record_directory" and "record_keyframe_interval" in milliseconds set where and how the recording is written
+		//A session being replayed isn't recorded again
+		if (fReplay == null && Boolean.TRUE.equals(config.get("record_session"))) {
+			Path directory = Paths.get(System.getProperty("user.home"), "webdashboard_recordings");
+			if (config.get("record_directory") instanceof String) {
+				directory = Paths.get((String) config.get("record_directory"));
+			}
+
+			long keyframeInterval = sDefaultKeyframeInterval;
+			if (config.get("record_keyframe_interval") instanceof Number) {
+				keyframeInterval = ((Number) config.get("record_keyframe_interval")).longValue();
+			}
+
+			try {
+				fSessionRecorder = new SessionRecorder(directory, keyframeInterval);
+				sLogger.info("Recording session to " + fSessionRecorder.getFile());
+			} catch (Exception e) {
+				sLogger.error("Couldn't start the session recording in " + directory + ": " + e.getMessage());
+			}
+		}
+
+		//Numeric values can be kept for graphs with "graph_history", keeping them updates the value store every broadcast
+		if (Boolean.TRUE.equals(config.get("graph_history"))) {
+			fHistory = new TimeSeriesStore(sHistoryCapacity, sHistoryBudget);
+		}
+
+		fBroadcastWorker.start();
+
 		start();
 	}
 
-	//Puts a log message into the cue to be sent to the dashboard
-	public void log(String type, String message) {
-		fLogMessages.add(Map.of("type", type, "message", message));
-		fWebdashboadLogMessages.add(Map.of("type", type, "message", message));
+	public void stop() {
+		fBroadcastWorker.stop();
+
+		if (fLogJournal != null) {
+			fLogJournal.flush();
+		}
+
+		if (fSessionRecorder != null) {
+			fSessionRecorder.close();
+		}
+	}
+
+	//The pages are served from the same port as the sockets they open
+	@Override
+	public HttpResponse onHttpRequest(String method, String target, Headers headers) {
+		return fWebHttpServer.handle(method, target, headers);
+	}
+
+	//Puts a log message into the ring to be sent to the dashboard
+	//Messages are logged from any thread without blocking, the ring is drained by the broadcast worker
+	public void log(LogManager.Level level, String message) {
+		fLogMessages.add(level, System.currentTimeMillis(), message);
 	}
 
-	//Called by the service every frame
+	private void storeLogMessage(LogManager.Level level, long time, String message) {
+		long sequence = fLogStore.append(level, time, message);
+
+		if (fLogJournal != null) {
+			fLogJournal.append(level, time, sequence, message);
+		}
+	}
+
+	private void appendLogMessage(StringBuilder builder, long sequence) {
+		builder.append("TYPE:").append(fLogStore.getLevel(sequence).name()).append("MESSAGE:").append(fLogStore.getMessage(sequence));
+	}
+
+	private void appendMatchLogMessage(long sequence) {
+		appendLogMessage(fSecondaryStringBuilder, sequence);
+	}
+
+	//Called by the service every frame, the broadcast itself runs on the broadcast worker
 	public void broadcastToWebDashboard() {
+		fBroadcastWorker.requestBroadcast();
+	}
+
+	private void broadcast() {
+		long currentTime = System.currentTimeMillis();
+		long startTime = System.nanoTime();
+
+		for (RateGroup group : fRateGroups.values()) {
+			group.startBroadcast(currentTime);
+		}
+
+		storeLogMessages();
+
+		long diffStartTime = System.nanoTime();
+
+		//The values and match pages, the graph history and the session recording all read from the value store
+		if (fReplay != null) {
+			fReplay.update(currentTime);
+
+			if (!fValuesClients.isEmpty() || !fMatchClients.isEmpty() || fHistory != null) {
+				fValues.update(fReplay.getNumerics(), fReplay.getBooleans(), fReplay.getStrings(), fReplay.getVectors(), fReplay.getOutputs());
+			}
+		} else if (!fValuesClients.isEmpty() || !fMatchClients.isEmpty() || fHistory != null || fSessionRecorder != null) {
+			fValues.update(fSharedInputValues.getAllNumerics(), fSharedInputValues.getAllBooleans(), fSharedInputValues.getAllStrings(),
+					fSharedInputValues.getAllVectors(), fSharedOutputValues.getAllOutputs());
+		}
+
+		fMetrics.recordDiffTime(System.nanoTime() - diffStartTime);
+
+		if (fHistory != null) {
+			fHistory.record(currentTime, fValues);
+		}
+
+		if (fSessionRecorder != null) {
+			fSessionRecorder.record(currentTime, fValues, fKeyTable);
+		}
+
+		long encodeStartTime = System.nanoTime();
+
 		broadcastValuesDataToWebDashboard();
 
 		broadcastMatchDataToWebDashboard();
 
 		broadcastLogDataToWebDashboard();
+
+		fMetrics.recordEncodeTime(System.nanoTime() - encodeStartTime);
+
+		for (WebSocket socket : fValuesClients.keySet()) {
+			fMetrics.recordQueueDepth(socket.getQueuedBytes());
+		}
+		for (WebSocket socket : fMatchClients.keySet()) {
+			fMetrics.recordQueueDepth(socket.getQueuedBytes());
+		}
+		for (WebSocket socket : fLogCursors.keySet()) {
+			fMetrics.recordQueueDepth(socket.getQueuedBytes());
+		}
+
+		if (fReplay != null && fReplayScheduler.shouldRun()) {
+			fReplayScheduler.run();
+
+			sendReplayStatus();
+		}
+
+		for (RateGroup group : fRateGroups.values()) {
+			group.finishBroadcast(currentTime);
+		}
+
+		fMetrics.recordBroadcastTime(System.nanoTime() - startTime);
+
+		if (fMetricsScheduler.shouldRun()) {
+			fMetricsScheduler.run();
+
+			fMetrics.publish(fSharedInputValues, fLogMessages.getDropped());
+		}
 	}
 
 	//Send information for the values page
 	private void broadcastValuesDataToWebDashboard() {
-		if (fValuesSockets.isEmpty()) return;
+		if (fValuesClients.isEmpty()) return;
 
-		fMainStringBuilder.setLength(0);
+		fSubscriptions.update();
+		fSnapshotFrames.clear();
 
-		fNumerics.clear();
-		fNumerics.putAll(fSharedInputValues.getAllNumerics());
-		for (HashMap.Entry<String, Double> value : fNumerics.entrySet()) {
-			if (!value.getValue().equals(fLastNumerics.get(value.getKey()))) {
-				fMainStringBuilder.append("numeric*").append(value.getKey()).append("*").append(String.format("%6f", value.getValue())).append("~");
-			}
+		for (RateGroup group : fRateGroups.values()) {
+			group.getPendingValues().or(fValues.getDirty());
 		}
-		fLastNumerics.clear();
-		fLastNumerics.putAll(fNumerics);
 
-		fBooleans.clear();
-		fBooleans.putAll(fSharedInputValues.getAllBooleans());
-		for (HashMap.Entry<String, Boolean> value : fBooleans.entrySet()) {
-			if (!value.getValue().equals(fLastBooleans.get(value.getKey()))) {
-				fMainStringBuilder.append("boolean*").append(value.getKey()).append("*").append(value.getValue()).append("~");
+		for (DashboardClient client : fValuesClients.values()) {
+			WebSocket socket = client.getSocket();
+
+			//Clients that fell behind had their queued deltas and definitions dropped, they get every current value instead
+			boolean stale = socket.takeStale("values");
+			if (stale) {
+				client.setDefinedKeys(0);
 			}
-		}
-		fLastBooleans.clear();
-		fLastBooleans.putAll(fBooleans);
 
-		fStrings.clear();
-		fStrings.putAll(fSharedInputValues.getAllStrings());
-		for (HashMap.Entry<String, String> value : fStrings.entrySet()) {
-			if (!value.getValue().equals(fLastStrings.get(value.getKey()))) {
-				fMainStringBuilder.append("string*").append(value.getKey()).append("*").append(value.getValue()).append("~");
+			boolean snapshot = client.takeResync() || stale;
+			if (!snapshot && !client.getRateGroup().isDue()) {
+				continue;
 			}
-		}
-		fLastStrings.clear();
-		fLastStrings.putAll(fStrings);
 
-		fVectors.clear();
-		fVectors.putAll(fSharedInputValues.getAllVectors());
-		for (HashMap.Entry<String, Map<String, Double>> value : fVectors.entrySet()) {
-			if (!value.getValue().equals(fLastVectors.get(value.getKey()))) {
-				fMainStringBuilder.append("vector*").append(value.getKey());
-				for (Map.Entry<String, Double> v : value.getValue().entrySet()) {
-					fMainStringBuilder.append("*").append(v.getKey()).append(": ").append(v.getValue());
-				}
-				fMainStringBuilder.append("~");
+			@Nullable
+			ByteBuffer frame = getValuesFrame(client, snapshot);
+
+			if (frame == null) {
+				continue;
 			}
-		}
-		fLastVectors.clear();
-		fLastVectors.putAll(fVectors);
 
-		fOutputs.clear();
-		fOutputs.putAll(fSharedOutputValues.getAllOutputs());
-		for (HashMap.Entry<String, Object> value : fOutputs.entrySet()) {
-			if (!value.getValue().equals(fLastOutputs.get(value.getKey()))) {
-				fMainStringBuilder.append("output*").append(value.getKey()).append("*").append(value.getValue()).append("~");
+			if (client.isBinary()) {
+				fBinaryKeyDefinitions.send(client, "values");
+			} else if (client.isInterned()) {
+				fInternedKeyDefinitions.send(client, "values");
 			}
+
+			socket.sendFrame(frame, "values");
 		}
-		fLastOutputs.clear();
-		fLastOutputs.putAll(fOutputs);
+	}
 
-		if (fMainStringBuilder.length() > 0) {
+	//Returns the values frame for the client's encoding, subscription and rate, or null if there are no values to send
+	//Frames are built once a broadcast and shared by every client they apply to
+	@Nullable
+	private ByteBuffer getValuesFrame(DashboardClient client, boolean snapshot) {
+		int encoding = getEncoding(client);
+		Subscription subscription = client.getSubscription();
+
+		ByteBuffer[] frames;
+		BitSet ids;
+		if (snapshot) {
+			frames = fSnapshotFrames.computeIfAbsent(subscription, s -> new ByteBuffer[3]);
+			ids = fValues.getPresent();
+		} else {
+			frames = client.getRateGroup().getValuesFrames(subscription);
+			ids = client.getRateGroup().getPendingValues();
+		}
 
-			fSendFormData.clear();
+		if (frames[encoding] == null) {
+			@Nullable
+			ByteBuffer frame = fValuesFrameEncoder.encode(encoding, ids, subscription);
 
-			send(fValuesSockets, fSendFormData
-					.add("response", "values")
-					.add("values", fMainStringBuilder.substring(0, fMainStringBuilder.length() - 1))
-					.getData());
+			frames[encoding] = frame == null ? sEmptyFrame : frame;
 		}
+
+		return frames[encoding] == sEmptyFrame ? null : frames[encoding];
+	}
+
+	private static int getEncoding(DashboardClient client) {
+		return client.isBinary() ? sBinaryEncoding : client.isInterned() ? sInternedEncoding : sTextEncoding;
 	}
 
 	//Send information for the match web page
 	private void broadcastMatchDataToWebDashboard() {
-		if (fMatchSockets.isEmpty()) return;
+		if (fMatchClients.isEmpty()) return;
+
+		//Clients that fell behind get every match value again instead of the deltas they missed
+		boolean hasSnapshotClients = false;
+		for (DashboardClient client : fMatchClients.values()) {
+			if (client.getSocket().takeStale("match_values")) {
+				client.setDefinedKeys(0);
+				client.setResync(true);
+			}
+			hasSnapshotClients |= client.isResync();
+		}
 
-		fAllMatchValues.clear();
-		fAllMatchValues.putAll(fSharedInputValues.getAllNumerics());
-		fAllMatchValues.putAll(fSharedInputValues.getAllBooleans());
-		fAllMatchValues.putAll(fSharedInputValues.getAllStrings());
-		fAllMatchValues.putAll(fSharedOutputValues.getAllOutputs());
+		fSnapshotStringBuilder.setLength(0);
+		fInternedSnapshotStringBuilder.setLength(0);
+		fMatchDirty.clear();
 
-		fMainStringBuilder.setLength(0);
+		for (MatchWidget widget : fMatchWidgets) {
+			int id = widget.getId();
 
-		for (HashMap.Entry<String, Map<String, Object>> matchValue : fMatchValues.entrySet()) {
-			String type = matchValue.getValue().get("type").toString();
+			//Log widgets show the messages of their level logged since they last read
+			if (widget.getType() == MatchWidget.Type.LOG) {
+				fSecondaryStringBuilder.setLength(0);
 
-			String name = matchValue.getKey();
-			if (matchValue.getValue().containsKey("display_name")) {
-				name = String.valueOf(matchValue.getValue().get("display_name"));
-			}
+				long from = Math.max(fMatchLogCursors[id], fLogStore.getNext() - sMatchLogBacklog);
+				fMatchLogCursors[id] = fLogStore.read(widget.getLevel(), from, fMatchLogReader);
 
-			String value = "";
-			if (fAllMatchValues.containsKey(matchValue.getKey())) {
-				value = String.valueOf(fAllMatchValues.get(matchValue.getKey()));
-			} else {
-				if (type.equals("value") || type.equals("boolean") || type.equals("other") || type.equals("auto")) {
-					value = "";
-				} else if (type.equals("dial")) {
-					value = "0";
+				if (fSecondaryStringBuilder.length() > 0) {
+					fMatchDirty.set(id);
+					for (RateGroup group : fRateGroups.values()) {
+						group.getPendingLogs().computeIfAbsent(id, i -> new StringBuilder()).append(fSecondaryStringBuilder);
+					}
 				}
+				continue;
 			}
 
-			if (!(fLastMatchValues.containsKey(matchValue.getKey()) && fLastMatchValues.get(matchValue.getKey()).equals(value))) {
-				if (type.equals("value") || type.equals("boolean") || type.equals("other") || type.equals("auto")) {
-					fMainStringBuilder.append(type).append("*$#$*").append(name).append("*$#$*").append(value).append("~$#$~");
-				} else if (type.equals("dial")) {
-					String min = "0";
-					if (matchValue.getValue().containsKey("min")) {
-						min = String.valueOf(matchValue.getValue().get("min"));
+			//A widget changed if its value did, or if the value appeared or went away
+			boolean hasValue = widget.hasValue(fValues);
+			boolean changed = !fMatchSent.get(id) || hasValue != fMatchHadValue.get(id) || (hasValue && fValues.getDirty().get(widget.getValueId()));
+
+			fMatchSent.set(id);
+			fMatchHadValue.set(id, hasValue);
+
+			if (hasSnapshotClients) {
+				appendMatchValue(fSnapshotStringBuilder, widget, widget.getDisplayName(), fValues);
+				appendMatchValue(fInternedSnapshotStringBuilder, widget, id, fValues);
+			}
+
+			if (changed) {
+				fMatchDirty.set(id);
+			}
+		}
+
+		for (RateGroup group : fRateGroups.values()) {
+			group.getPendingMatchValues().or(fMatchDirty);
+		}
+
+		@Nullable
+		ByteBuffer snapshot = null;
+		@Nullable
+		ByteBuffer internedSnapshot = null;
+
+		for (DashboardClient client : fMatchClients.values()) {
+			WebSocket socket = client.getSocket();
+
+			if (client.takeResync()) {
+				if (client.isInterned()) {
+					if (internedSnapshot == null) {
+						internedSnapshot = createMatchValuesFrame(fInternedSnapshotStringBuilder);
 					}
 
-					String max = "10";
-					if (matchValue.getValue().containsKey("max")) {
-						max = String.valueOf(matchValue.getValue().get("max"));
+					fMatchKeyDefinitions.send(client, "match_values");
+					socket.sendFrame(internedSnapshot, "match_values");
+				} else {
+					if (snapshot == null) {
+						snapshot = createMatchValuesFrame(fSnapshotStringBuilder);
 					}
 
-					fMainStringBuilder.append(type).append("*$#$*").append(name).append("*$#$*").append(value).append("*$#$*").append(min).append("*$#$*").append(max).append("~$#$~");
-				} else if (type.equals("log")) {
-					String level = "INFO";
-					if (matchValue.getValue().containsKey("level")) {
-						level = String.valueOf(matchValue.getValue().get("level")).toUpperCase();
+					socket.sendFrame(snapshot, "match_values");
+				}
+			} else if (client.getRateGroup().isDue()) {
+				@Nullable
+				ByteBuffer frame = getMatchValuesFrame(client);
+
+				if (frame != null) {
+					if (client.isInterned()) {
+						fMatchKeyDefinitions.send(client, "match_values");
 					}
 
-					fSecondaryStringBuilder.setLength(0);
+					socket.sendFrame(frame, "match_values");
+				}
+			}
+		}
+	}
 
-					while (!fWebdashboadLogMessages.isEmpty()) {
-						Map<String, String> data = fWebdashboadLogMessages.remove();
+	//Returns the match values that changed since the client's rate group last sent, or null if none did
+	@Nullable
+	private ByteBuffer getMatchValuesFrame(DashboardClient client) {
+		RateGroup group = client.getRateGroup();
+		int encoding = client.isInterned() ? sInternedEncoding : sTextEncoding;
+		ByteBuffer[] frames = group.getMatchFrames();
 
-						if (LogManager.Level.valueOf(data.get("type")).getPriority() >= LogManager.Level.valueOf(level).getPriority()) {
-							fSecondaryStringBuilder.append("TYPE:").append(data.get("type")).append("MESSAGE:").append(data.get("message"));
-						}
-					}
+		if (frames[encoding] == null) {
+			fMainStringBuilder.setLength(0);
 
-					if (fSecondaryStringBuilder.length() > 0) {
-						value = fSecondaryStringBuilder.toString();
+			BitSet ids = group.getPendingMatchValues();
+			for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+				MatchWidget widget = fMatchWidgets[id];
+				Object key = encoding == sInternedEncoding ? (Object) id : widget.getDisplayName();
 
-						fMainStringBuilder.append(type).append("*$#$*").append(name).append("*$#$*").append(fSecondaryStringBuilder).append("~$#$~");
-					} else {
-						value = "empty";
+				if (widget.getType() == MatchWidget.Type.LOG) {
+					@Nullable
+					StringBuilder messages = group.getPendingLogs().get(id);
+
+					if (messages != null) {
+						fMainStringBuilder.append(widget.getType().getName()).append("*$#$*").append(key).append("*$#$*").append(messages).append("~$#$~");
 					}
+				} else {
+					appendMatchValue(fMainStringBuilder, widget, key, fValues);
 				}
 			}
 
-			fLastMatchValues.put(matchValue.getKey(), value);
+			frames[encoding] = fMainStringBuilder.length() == 0 ? sEmptyFrame : createMatchValuesFrame(fMainStringBuilder);
 		}
 
-		fSendFormData.clear();
+		return frames[encoding] == sEmptyFrame ? null : frames[encoding];
+	}
+
+	//Frames a match values message from a builder of values each followed by a "~$#$~"
+	private ByteBuffer createMatchValuesFrame(StringBuilder values) {
+		fFrameStringBuilder.setLength(0);
+		UrlFormData.append(fFrameStringBuilder, "response", "match_values");
+		UrlFormData.append(fFrameStringBuilder, "values", values, 0, Math.max(values.length() - 5, 0));
+
+		return WebSocket.textFrame(fFrameStringBuilder.toString());
+	}
+
+	//Appends a value, boolean, other, auto or dial match value, log values can't be resent and are skipped
+	//Text clients are sent the display name, interned clients are sent its id
+	private static void appendMatchValue(StringBuilder builder, MatchWidget widget, Object key, ValueStore values) {
+		if (widget.getType() == MatchWidget.Type.LOG) {
+			return;
+		}
+
+		builder.append(widget.getType().getName()).append("*$#$*").append(key).append("*$#$*");
+		widget.appendValue(builder, values);
+
+		if (widget.getType() == MatchWidget.Type.DIAL) {
+			builder.append("*$#$*").append(widget.getMin()).append("*$#$*").append(widget.getMax());
+		}
+
+		builder.append("~$#$~");
+	}
+
+	//Encodes the names of a range of ids as a "define" message for interned clients
+	private ByteBuffer createKeyDefinitionFrame(String response, String separator, String terminator, KeyTable keyTable, int start, int end) {
+		StringBuilder keys = new StringBuilder();
+
+		for (int id = start; id < end; id++) {
+			if (id > start) {
+				keys.append(terminator);
+			}
+			keys.append(id).append(separator).append(keyTable.getName(id));
+		}
+
+		return WebSocket.textFrame(new UrlFormData()
+				.add("response", response)
+				.add("keys", keys.toString())
+				.getData());
+	}
+
+	//The ring is emptied into the store every broadcast so the history is kept even with no log pages open
+	private void storeLogMessages() {
+		fLogMessages.drain(fLogReader);
 
-		if (fMainStringBuilder.length() > 0) {
-			send(fMatchSockets, fSendFormData
-					.add("response", "match_values")
-					.add("values", fMainStringBuilder.substring(0, fMainStringBuilder.length() - 5))
-					.getData());
+		//Messages that didn't fit in the ring are recorded instead of silently missing
+		long dropped = fLogMessages.getDropped();
+		if (dropped > fReportedDroppedLogs) {
+			storeLogMessage(LogManager.Level.ERROR, System.currentTimeMillis(), "Web dashboard dropped " + (dropped - fReportedDroppedLogs) + " log messages");
+			fReportedDroppedLogs = dropped;
 		}
 	}
 
 	//Sends information for the log web page
 	private void broadcastLogDataToWebDashboard() {
-
 		if (fLoggingScheduler.shouldRun()) {
 			fLoggingScheduler.run();
 
-			if (fLogSockets.isEmpty()) {
+			if (fLogCursors.isEmpty()) {
 				return;
 			}
 
-			fMainStringBuilder.setLength(0);
+			//Sockets at the same cursor share a frame
+			Map<Long, ByteBuffer> frames = new HashMap<>();
+
+			for (Map.Entry<WebSocket, Long> cursor : fLogCursors.entrySet()) {
+				long start = Math.max(cursor.getValue(), fLogStore.getFirst());
+
+				if (start >= fLogStore.getNext()) {
+					continue;
+				}
+
+				ByteBuffer frame = frames.computeIfAbsent(start, s -> {
+					fMainStringBuilder.setLength(0);
+					for (long sequence = s; sequence < fLogStore.getNext(); sequence++) {
+						appendLogMessage(fMainStringBuilder, sequence);
+					}
+
+					fFrameStringBuilder.setLength(0);
+					UrlFormData.append(fFrameStringBuilder, "response", "log");
+					UrlFormData.append(fFrameStringBuilder, "first", String.valueOf(s));
+					UrlFormData.append(fFrameStringBuilder, "messages", fMainStringBuilder);
+
+					return WebSocket.textFrame(fFrameStringBuilder.toString());
+				});
+
+				try {
+					cursor.getKey().sendFrame(frame);
+				} catch (Exception e) {
+					sLogger.error(e);
+				}
+
+				cursor.setValue(fLogStore.getNext());
+			}
+		}
+	}
+
+	//Sends a page of the log history, newest messages first are found but they are sent in the order they were logged
+	//Without a "before" sequence the page ends where the socket's live messages start
+	private void sendLogPage(WebSocket socket, long cursor) {
+		LogManager.Level level;
+		@Nullable
+		Pattern pattern = null;
+		long startTime;
+		long endTime;
+		long before;
+		long limit;
+
+		//A bad field is answered with an error page instead of leaving the page waiting
+		try {
+			level = getLevel("level", LogManager.Level.TRACE);
+			startTime = getLong("start", 0);
+			endTime = getLong("end", Long.MAX_VALUE);
+			before = getLong("before", cursor);
+			limit = getLong("limit", sLogPageSize);
+
+			if (fReceiveFormData.containsKey("regex")) {
+				String regex = fReceiveFormData.get("regex");
+
+				if (regex.length() > sMaxLogPatternLength) {
+					throw new IllegalArgumentException("Regex is longer than " + sMaxLogPatternLength + " characters");
+				}
 
-			while (!fLogMessages.isEmpty()) {
-				Map<String, String> data = fLogMessages.remove();
+				pattern = Pattern.compile(regex);
+			}
+		} catch (PatternSyntaxException e) {
+			sendLogPageError(socket, "Invalid regex: " + e.getDescription());
+			return;
+		} catch (IllegalArgumentException e) {
+			sendLogPageError(socket, e.getMessage());
+			return;
+		}
+
+		fLogStore.query(level, pattern, startTime, endTime, before, (int) Math.max(1, Math.min(limit, sLogPageSize)), fLogPage);
+
+		if (fLogPage.isAborted()) {
+			sendLogPageError(socket, "Regex took too long, try a simpler one");
+			return;
+		}
+
+		fMainStringBuilder.setLength(0);
+		for (int i = fLogPage.size() - 1; i >= 0; i--) {
+			appendLogMessage(fMainStringBuilder, fLogPage.get(i));
+		}
+
+		fFrameStringBuilder.setLength(0);
+		UrlFormData.append(fFrameStringBuilder, "response", "log_page");
+		UrlFormData.append(fFrameStringBuilder, "messages", fMainStringBuilder);
+		UrlFormData.append(fFrameStringBuilder, "more", String.valueOf(fLogPage.hasMore()));
+		if (fLogPage.size() > 0) {
+			UrlFormData.append(fFrameStringBuilder, "before", String.valueOf(fLogPage.get(fLogPage.size() - 1)));
+		}
+
+		try {
+			socket.send(fFrameStringBuilder.toString());
+		} catch (Exception e) {
+			sLogger.error(e);
+		}
+	}
+
+	private void sendLogPageError(WebSocket socket, String error) {
+		fFrameStringBuilder.setLength(0);
+		UrlFormData.append(fFrameStringBuilder, "response", "log_page");
+		UrlFormData.append(fFrameStringBuilder, "error", error);
+		UrlFormData.append(fFrameStringBuilder, "messages", "");
+		UrlFormData.append(fFrameStringBuilder, "more", "false");
+
+		try {
+			socket.send(fFrameStringBuilder.toString());
+		} catch (Exception e) {
+			sLogger.error(e);
+		}
+	}
 
-				fMainStringBuilder.append("TYPE:").append(data.get("type")).append("MESSAGE:").append(data.get("message"));
+	//Reads a whole number sent by a page, or the default if it wasn't sent
+	private long getLong(String name, long defaultValue) {
+		@Nullable
+		String value = fReceiveFormData.get(name);
+
+		if (value == null) {
+			return defaultValue;
+		}
+
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid " + name + " \"" + value + "\"");
+		}
+	}
+
+	//Reads a finite number sent by a page, or the default if it wasn't sent
+	private double getDouble(String name, double defaultValue) {
+		@Nullable
+		String value = fReceiveFormData.get(name);
+
+		if (value == null) {
+			return defaultValue;
+		}
+
+		@Nullable
+		Double number = parseDouble(value.trim());
+		if (number == null) {
+			throw new IllegalArgumentException("Invalid " + name + " \"" + value + "\"");
+		}
+
+		return number;
+	}
+
+	//Reads "true" or "false" sent by a page, or the default if it wasn't sent
+	private boolean getBoolean(String name, boolean defaultValue) {
+		@Nullable
+		String value = fReceiveFormData.get(name);
+
+		if (value == null) {
+			return defaultValue;
+		} else if (value.trim().equalsIgnoreCase("true")) {
+			return true;
+		} else if (value.trim().equalsIgnoreCase("false")) {
+			return false;
+		}
+
+		throw new IllegalArgumentException("Invalid " + name + " \"" + value + "\"");
+	}
+
+	//Reads a log level sent by a page by name, or the default if it wasn't sent
+	private LogManager.Level getLevel(String name, LogManager.Level defaultValue) {
+		@Nullable
+		String value = fReceiveFormData.get(name);
+
+		if (value == null) {
+			return defaultValue;
+		}
+
+		for (LogManager.Level level : LogManager.Level.values()) {
+			if (level.name().equalsIgnoreCase(value.trim())) {
+				return level;
+			}
+		}
+
+		throw new IllegalArgumentException("Invalid " + name + " \"" + value + "\"");
+	}
+
+	//Handles the replay controls, "paused", "speed" and "seek" in milliseconds from the start can be sent together
+	//Every control is checked before any is applied, a bad one is answered with an error and none of them are applied
+	private void controlReplay(WebSocket socket, SessionReplay replay) {
+		double speed;
+		long seek;
+		boolean paused;
+
+		try {
+			speed = getDouble("speed", replay.getSpeed());
+			seek = getLong("seek", 0);
+			paused = getBoolean("paused", replay.isPaused());
+
+			if (speed <= 0) {
+				throw new IllegalArgumentException("Invalid speed \"" + speed + "\"");
+			}
+		} catch (IllegalArgumentException e) {
+			sendReplayError(socket, replay, e.getMessage());
+			return;
+		}
+
+		if (fReceiveFormData.containsKey("speed")) {
+			replay.setSpeed(speed);
+		}
+
+		if (fReceiveFormData.containsKey("seek")) {
+			replay.seek(replay.getStartTime() + Math.max(0, Math.min(seek, replay.getEndTime() - replay.getStartTime())));
+		}
+
+		if (fReceiveFormData.containsKey("paused")) {
+			//Playing from the end starts the recording over
+			if (!paused && replay.getPosition() >= replay.getEndTime()) {
+				replay.seek(replay.getStartTime());
+			}
+
+			replay.setPaused(paused);
+		}
+
+		sendReplayStatus();
+	}
+
+	//Sends the replay's status with the error to the page that sent the bad control, so its controls go back to where the replay is
+	private void sendReplayError(WebSocket socket, SessionReplay replay, String error) {
+		try {
+			socket.send(getReplayStatus(replay).add("error", error).getData());
+		} catch (Exception e) {
+			sLogger.error(e);
+		}
+	}
+
+	//Sends where the replay is to the values and match pages, times are in milliseconds from the start of the recording
+	private void sendReplayStatus() {
+		@Nullable
+		SessionReplay replay = fReplay;
+
+		if (replay == null || (fValuesClients.isEmpty() && fMatchClients.isEmpty())) {
+			return;
+		}
+
+		ByteBuffer frame = WebSocket.textFrame(getReplayStatus(replay).getData());
+
+		send(fValuesClients.keySet(), frame);
+		send(fMatchClients.keySet(), frame);
+	}
+
+	//Fills the shared send form data with where the replay is
+	private UrlFormData getReplayStatus(SessionReplay replay) {
+		fSendFormData.clear();
+		return fSendFormData
+				.add("response", "replay_status")
+				.add("time", String.valueOf(replay.getPosition() - replay.getStartTime()))
+				.add("duration", String.valueOf(replay.getEndTime() - replay.getStartTime()))
+				.add("speed", String.valueOf(replay.getSpeed()))
+				.add("paused", String.valueOf(replay.isPaused()));
+	}
+
+	//Sends the history of each of the "~" separated keys over the last "window" milliseconds, downsampled to "points" each
+	//Each point is sent as how many milliseconds ago it was and its value, so the page doesn't need the robot's clock
+	private void sendHistory(WebSocket socket, TimeSeriesStore history) {
+		long now = System.currentTimeMillis();
+		@Nullable
+		String keys = fReceiveFormData.get("keys");
+		long window;
+		long points;
+
+		//A bad request is answered with an error instead of the history
+		try {
+			window = getLong("window", sDefaultHistoryWindow);
+			points = getLong("points", sDefaultHistoryPoints);
+
+			if (keys == null || keys.isEmpty()) {
+				throw new IllegalArgumentException("No keys");
+			} else if (window <= 0) {
+				throw new IllegalArgumentException("Invalid window \"" + window + "\"");
+			} else if (points <= 0) {
+				throw new IllegalArgumentException("Invalid points \"" + points + "\"");
 			}
+		} catch (IllegalArgumentException e) {
+			sendHistoryError(socket, e.getMessage());
+			return;
+		}
 
-			fSendFormData.clear();
+		fMainStringBuilder.setLength(0);
+		for (String key : keys.split("~")) {
+			history.query(fKeyTable.findId(key), now - window, now, (int) Math.min(points, sHistoryPoints), fHistoryWindow);
 
+			//Keys without history are still sent so the page knows it has everything it asked for
 			if (fMainStringBuilder.length() > 0) {
-				send(fLogSockets, fSendFormData
-						.add("response", "log")
-						.add("messages", fMainStringBuilder.toString())
-						.getData());
+				fMainStringBuilder.append("~");
+			}
+
+			fMainStringBuilder.append(key);
+			for (int i = 0; i < fHistoryWindow.size(); i++) {
+				fMainStringBuilder.append("*").append(now - fHistoryWindow.getTime(i)).append(",").append(fHistoryWindow.getValue(i));
 			}
 		}
+
+		fFrameStringBuilder.setLength(0);
+		UrlFormData.append(fFrameStringBuilder, "response", "history");
+		UrlFormData.append(fFrameStringBuilder, "values", fMainStringBuilder);
+
+		try {
+			socket.send(fFrameStringBuilder.toString());
+		} catch (Exception e) {
+			sLogger.error(e);
+		}
+	}
+
+	private void sendHistoryError(WebSocket socket, String error) {
+		fFrameStringBuilder.setLength(0);
+		UrlFormData.append(fFrameStringBuilder, "response", "history");
+		UrlFormData.append(fFrameStringBuilder, "error", error);
+		UrlFormData.append(fFrameStringBuilder, "values", "");
+
+		try {
+			socket.send(fFrameStringBuilder.toString());
+		} catch (Exception e) {
+			sLogger.error(e);
+		}
 	}
 
 	private String listToUrlFormDataList(List list) {
@@ -308,8 +970,13 @@ public class WebsocketServer extends AbstractWebsocketServer implements LogHandl
 	}
 
 	//Called when a new websocket connection opens
+	//Client state is only touched by the broadcast worker, so connections and messages are handled there
 	@Override
 	public void onOpen(WebSocket socket) {
+		fBroadcastWorker.execute(() -> openSocket(socket));
+	}
+
+	private void openSocket(WebSocket socket) {
 		try {
 			switch (socket.getPath()) {
 				case "/webdashboard": {
@@ -322,22 +989,28 @@ public class WebsocketServer extends AbstractWebsocketServer implements LogHandl
 					break;
 				}
 				case "/values": {
-					fValuesSockets.add(socket);
+					fValuesClients.put(socket, new DashboardClient(socket, fSubscriptions.getAll(), fEveryBroadcast));
 
-					clearAllValues();
+					resync(fValuesClients, socket);
 
 					break;
 				}
 				case "/match": {
-					fMatchSockets.add(socket);
+					fMatchClients.put(socket, new DashboardClient(socket, fSubscriptions.getAll(), fEveryBroadcast));
 
 					sendAutoData();
 
-					clearMatchValues();
+					resync(fMatchClients, socket);
+					break;
+				}
+				case "/graph": {
+					//Graphs only ask for history, live values reach them through the values page
+					fGraphSockets.add(socket);
 					break;
 				}
 				case "/log": {
-					fLogSockets.add(socket);
+					//New log pages get messages from now on, older ones are read with a query
+					fLogCursors.put(socket, fLogStore.getNext());
 					break;
 				}
 			}
@@ -349,12 +1022,16 @@ public class WebsocketServer extends AbstractWebsocketServer implements LogHandl
 	//Called when a websocket connection closes
 	@Override
 	public void onClose(WebSocket webSocket) {
-		removeSocket(webSocket);
+		fBroadcastWorker.execute(() -> removeSocket(webSocket));
 	}
 
 	//All messages received over websocket connections come here to be forwarded to the robot or web page
 	@Override
 	public void onMessage(WebSocket webSocket, String message) {
+		fBroadcastWorker.execute(() -> handleMessage(webSocket, message));
+	}
+
+	private void handleMessage(WebSocket webSocket, String message) {
 
 		fReceiveFormData.clear();
 		fReceiveFormData.parse(message);
@@ -362,11 +1039,72 @@ public class WebsocketServer extends AbstractWebsocketServer implements LogHandl
 		if (fReceiveFormData.containsKey("request")) {
 			switch (fReceiveFormData.get("request")) {
 				case "all_values": {
-					clearAllValues();
+					resync(fValuesClients, webSocket);
 					break;
 				}
 				case "all_match_values": {
-					clearMatchValues();
+					resync(fMatchClients, webSocket);
+					break;
+				}
+				case "set_rate": {
+					//Rates are in updates per second, clients get every broadcast until they ask for less
+					@Nullable
+					DashboardClient client = fValuesClients.containsKey(webSocket) ? fValuesClients.get(webSocket) : fMatchClients.get(webSocket);
+					@Nullable
+					Double rate = parseDouble(fReceiveFormData.get("rate"));
+					if (client != null && rate != null && rate > 0) {
+						setRateGroup(client, rate);
+					}
+					break;
+				}
+				case "replay": {
+					@Nullable
+					SessionReplay replay = fReplay;
+					if (replay != null && (fValuesClients.containsKey(webSocket) || fMatchClients.containsKey(webSocket))) {
+						controlReplay(webSocket, replay);
+					}
+					break;
+				}
+				case "history": {
+					@Nullable
+					TimeSeriesStore history = fHistory;
+					if (history != null && (fGraphSockets.contains(webSocket) || fValuesClients.containsKey(webSocket))) {
+						sendHistory(webSocket, history);
+					}
+					break;
+				}
+				case "query": {
+					@Nullable
+					Long cursor = fLogCursors.get(webSocket);
+					if (cursor != null) {
+						sendLogPage(webSocket, cursor);
+					}
+					break;
+				}
+				case "subscribe":
+				case "unsubscribe":
+				case "set_subscription": {
+					@Nullable
+					DashboardClient client = fValuesClients.get(webSocket);
+					if (client != null && fReceiveFormData.containsKey("keys")) {
+						//Keys are a "~" separated list of names and glob patterns
+						Set<String> patterns = new HashSet<>(client.getSubscription().getPatterns());
+						List<String> keys = Arrays.asList(fReceiveFormData.get("keys").split("~"));
+
+						if (fReceiveFormData.get("request").equals("unsubscribe")) {
+							patterns.removeAll(keys);
+						} else if (fReceiveFormData.get("request").equals("set_subscription")) {
+							//Replaces every pattern at once, so a page can change what it shows with one resync
+							patterns = new HashSet<>(keys);
+						} else if (client.getSubscription() == fSubscriptions.getAll()) {
+							//The first subscription narrows the client down from every key
+							patterns = new HashSet<>(keys);
+						} else {
+							patterns.addAll(keys);
+						}
+
+						client.setSubscription(fSubscriptions.change(client.getSubscription(), patterns));
+					}
 					break;
 				}
 				case "change_value": {
@@ -440,6 +1178,27 @@ public class WebsocketServer extends AbstractWebsocketServer implements LogHandl
 
 	}
 
+	//Counts every frame written for the metrics
+	@Override
+	public void onFrameWritten(WebSocket webSocket, @Nullable String topic, int bytes, long latency) {
+		fMetrics.recordWrite(topic, bytes, latency);
+	}
+
+	//Values page clients can ask for the binary values protocol, values and match clients for interned keys
+	@Nullable
+	@Override
+	public String selectProtocol(String path, List<String> protocols) {
+		if (path.equals("/values") && protocols.contains(BinaryValuesEncoder.PROTOCOL)) {
+			return BinaryValuesEncoder.PROTOCOL;
+		}
+
+		if ((path.equals("/values") || path.equals("/match")) && protocols.contains(DashboardClient.INTERNED_PROTOCOL)) {
+			return DashboardClient.INTERNED_PROTOCOL;
+		}
+
+		return null;
+	}
+
 	//Sends robot connection status to the web page
 	private synchronized void sendConnected() {
 		String message = new UrlFormData()
@@ -458,26 +1217,34 @@ public class WebsocketServer extends AbstractWebsocketServer implements LogHandl
 				.add("auto_action_list", listToUrlFormDataList(fAutoActionList))
 				.getData();
 
-		send(fWebDashboardSockets, response);
-		send(fMatchSockets, response);
-	}
+		ByteBuffer frame = WebSocket.textFrame(response);
 
-	private void clearAllValues() {
-		fLastNumerics.clear();
-		fLastBooleans.clear();
-		fLastStrings.clear();
-		fLastVectors.clear();
-		fLastOutputs.clear();
+		send(fWebDashboardSockets, frame);
+		fMatchClients.keySet().forEach(socket -> socket.sendFrame(frame));
 	}
 
-	private void clearMatchValues() {
-		fLastMatchValues.clear();
+	//Sends one client every current value and key name with the next broadcast, the other clients keep getting changes
+	private static void resync(Map<WebSocket, DashboardClient> clients, WebSocket socket) {
+		@Nullable
+		DashboardClient client = clients.get(socket);
+
+		if (client != null) {
+			client.setDefinedKeys(0);
+			client.setResync(true);
+		}
 	}
 
+	//Frames the message once and shares the encoded frame between all of the sockets
 	private void send(Set<WebSocket> sockets, String message) {
+		if (sockets.isEmpty()) return;
+
+		send(sockets, WebSocket.textFrame(message));
+	}
+
+	private void send(Set<WebSocket> sockets, ByteBuffer frame) {
 		sockets.forEach(socket -> {
 			try {
-				socket.send(message);
+				socket.sendFrame(frame);
 			} catch (Exception e) {
 				sLogger.error(e);
 			}
@@ -486,29 +1253,92 @@ public class WebsocketServer extends AbstractWebsocketServer implements LogHandl
 
 	private void removeSocket(WebSocket socket) {
 		fWebDashboardSockets.remove(socket);
-		fValuesSockets.remove(socket);
-		fMatchSockets.remove(socket);
-		fLogSockets.remove(socket);
+		fGraphSockets.remove(socket);
+		@Nullable
+		DashboardClient valuesClient = fValuesClients.remove(socket);
+		if (valuesClient != null) {
+			fSubscriptions.release(valuesClient.getSubscription());
+			releaseRateGroup(valuesClient.getRateGroup());
+		}
+		@Nullable
+		DashboardClient matchClient = fMatchClients.remove(socket);
+		if (matchClient != null) {
+			releaseRateGroup(matchClient.getRateGroup());
+		}
+		fLogCursors.remove(socket);
+	}
+
+	//Moves the client to the group of the allowed rate closest to the one it asked for without being slower
+	private void setRateGroup(DashboardClient client, double rate) {
+		double allowedRate = sRates[0];
+		for (double r : sRates) {
+			if (r >= rate) {
+				allowedRate = r;
+			}
+		}
+
+		long interval = allowedRate >= sBroadcastRate ? 0 : Math.round(1000 / allowedRate);
+
+		RateGroup group = client.getRateGroup();
+		client.setRateGroup(fRateGroups.computeIfAbsent(interval, RateGroup::new));
+		releaseRateGroup(group);
+	}
+
+	//Drops a group no client uses anymore, so it isn't updated every broadcast
+	private void releaseRateGroup(RateGroup group) {
+		if (group == fEveryBroadcast) {
+			return;
+		}
+
+		for (DashboardClient client : fValuesClients.values()) {
+			if (client.getRateGroup() == group) {
+				return;
+			}
+		}
+
+		for (DashboardClient client : fMatchClients.values()) {
+			if (client.getRateGroup() == group) {
+				return;
+			}
+		}
+
+		fRateGroups.remove(group.getInterval());
+	}
+
+	//Parses a number sent by a page, returns null if it is missing or isn't a finite number
+	@Nullable
+	private static Double parseDouble(@Nullable String text) {
+		if (text == null) {
+			return null;
+		}
+
+		try {
+			double value = Double.parseDouble(text);
+
+			return Double.isFinite(value) ? value : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
 	}
 
 	// Call the log method with the correct message level
 	@Override
 	public void trace(String message) {
-		log("TRACE", message);
+		log(LogManager.Level.TRACE, message);
 	}
 
 	@Override
 	public void debug(String message) {
-		log("DEBUG", message);
+		log(LogManager.Level.DEBUG, message);
 	}
 
 	@Override
 	public void info(String message) {
-		log("INFO", message);
+		log(LogManager.Level.INFO, message);
 	}
 
 	@Override
 	public void error(String message) {
-		log("ERROR", message);
+		log(LogManager.Level.ERROR, message);
 	}
 }
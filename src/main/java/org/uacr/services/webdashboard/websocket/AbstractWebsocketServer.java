@@ -4,29 +4,40 @@ import org.uacr.utilities.logging.LogManager;
 import org.uacr.utilities.logging.Logger;
 
 import javax.annotation.Nullable;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * AbstractWebsocketServer accepts and services websocket connections from a single selector thread,
+ * reads, accepts and writes are all driven by channel readiness so an idle server does not spin
+ * Plain http requests to the same port are answered by onHttpRequest, so one port can serve both pages and sockets
+ */
 
 public abstract class AbstractWebsocketServer {
 
 	private static final Logger sLogger = LogManager.getLogger(AbstractWebsocketServer.class);
+	private static final long sHeartbeatInterval = 2000;
+	private static final long sHeartbeatTimeout = 3 * sHeartbeatInterval;
 
 	private final int fPort;
 	private final Set<WebSocket> fSockets;
-	private final Set<WebSocket> fCurrentSockets;
+	private final Queue<WebSocket> fPendingWrites;
+	@Nullable
+	private Selector fSelector;
 	@Nullable
-	private ServerSocket fServer;
-	//private Executor fExecutor;
+	private ServerSocketChannel fServer;
 
 	public AbstractWebsocketServer(int port) {
 		fPort = port;
 		fSockets = Collections.synchronizedSet(new HashSet<>());
-		fCurrentSockets = Collections.synchronizedSet(new HashSet<>());
-		//fExecutor = Executors.newCachedThreadPool();
+		fPendingWrites = new ConcurrentLinkedQueue<>();
 	}
 
 	public AbstractWebsocketServer() {
@@ -43,9 +54,19 @@ public abstract class AbstractWebsocketServer {
 
 	private void startServer() {
 		try {
-			fServer = new ServerSocket(fPort);
-			fServer.setReuseAddress(true);
-			fServer.setSoTimeout(1);
+			if (fSelector == null) {
+				fSelector = Selector.open();
+			}
+
+			if (fServer != null) {
+				fServer.close();
+			}
+
+			fServer = ServerSocketChannel.open();
+			fServer.configureBlocking(false);
+			fServer.socket().setReuseAddress(true);
+			fServer.bind(new InetSocketAddress(fPort));
+			fServer.register(fSelector, SelectionKey.OP_ACCEPT);
 		} catch (Exception e) {
 			onError(null, e);
 		}
@@ -54,53 +75,56 @@ public abstract class AbstractWebsocketServer {
 	private void run() {
 		execute(() -> {
 			Thread.currentThread().setName("WebSocketServer - Run");
+
+			@Nullable
+			Selector selector = fSelector;
+			if (selector == null) {
+				return;
+			}
+
+			long lastHeartbeatTime = System.currentTimeMillis();
+
 			while (!Thread.currentThread().isInterrupted()) {
 				try {
-					@Nullable
-					Socket connection = null;
-					if (fServer != null) {
-						connection = fServer.accept();
-					}
+					selector.select(sHeartbeatInterval);
 
-					try {
-						if (connection != null) {
-							new WebSocket(connection, this);
-						}
-					} catch (Exception e) {
-						execute(() -> onError(null, e));
-					}
-				} catch (SocketTimeoutException e) {
+					flushPendingWrites();
 
-				} catch (Exception e) {
-					execute(() -> onError(null, e));
-					startServer();
-				}
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
 
-				try {
-					fCurrentSockets.clear();
-					fCurrentSockets.addAll(fSockets);
-
-					for (WebSocket socket : fCurrentSockets) {
-						try {
-							socket.update();
-						} catch (Exception e) {
-							execute(() -> onError(socket, e));
+						if (!key.isValid()) {
+							continue;
+						}
+
+						if (key.isAcceptable()) {
+							accept(selector);
+						} else {
+							handle(key);
 						}
 					}
-				} catch (Exception e) {
-					execute(() -> onError(null, e));
-				}
 
-				try {
-					Thread.sleep(5);
-				} catch (InterruptedException e) {
+					long currentTime = System.currentTimeMillis();
+					if (currentTime - lastHeartbeatTime >= sHeartbeatInterval) {
+						heartbeat(selector, currentTime);
+						lastHeartbeatTime = currentTime;
+					}
+				} catch (IOException e) {
+					onError(null, e);
+					startServer();
+				} catch (Exception e) {
+					onError(null, e);
 				}
 			}
 
-			fCurrentSockets.clear();
-			fCurrentSockets.addAll(fSockets);
+			List<WebSocket> sockets;
+			synchronized (fSockets) {
+				sockets = new ArrayList<>(fSockets);
+			}
 
-			for (WebSocket socket : fCurrentSockets) {
+			for (WebSocket socket : sockets) {
 				socket.close();
 			}
 
@@ -108,13 +132,93 @@ public abstract class AbstractWebsocketServer {
 		});
 	}
 
+	private void accept(Selector selector) {
+		if (fServer == null) {
+			return;
+		}
+
+		try {
+			@Nullable
+			SocketChannel channel;
+			while ((channel = fServer.accept()) != null) {
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+
+				SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+				key.attach(new WebSocket(channel, key, this));
+			}
+		} catch (Exception e) {
+			onError(null, e);
+		}
+	}
+
+	private void handle(SelectionKey key) {
+		WebSocket socket = (WebSocket) key.attachment();
+
+		try {
+			if (key.isReadable()) {
+				socket.onReadable();
+			}
+
+			if (key.isValid() && key.isWritable()) {
+				socket.onWritable();
+			}
+		} catch (Exception e) {
+			socket.disconnect();
+		}
+	}
+
+	//Pings every connection and drops the ones that have stopped responding
+	private void heartbeat(Selector selector, long currentTime) {
+		for (SelectionKey key : new ArrayList<>(selector.keys())) {
+			Object attachment = key.attachment();
+
+			if (key.isValid() && attachment instanceof WebSocket) {
+				((WebSocket) attachment).heartbeat(currentTime, sHeartbeatTimeout);
+			}
+		}
+	}
+
+	//Writes queued by other threads are flushed on the selector thread
+	private void flushPendingWrites() {
+		@Nullable
+		WebSocket socket;
+		while ((socket = fPendingWrites.poll()) != null) {
+			try {
+				socket.onWritable();
+			} catch (Exception e) {
+				socket.disconnect();
+			}
+		}
+	}
+
+	//Called by a socket from any thread when it has new data to send
+	protected final void requestWrite(WebSocket webSocket) {
+		fPendingWrites.add(webSocket);
+
+		if (fSelector != null) {
+			fSelector.wakeup();
+		}
+	}
+
 	protected void execute(Runnable run) {
 		new Thread(run).start();
-		//fExecutor.execute(run);
 	}
 
 	public abstract void onStart();
 
+	//Picks one of the sub-protocols offered by a connecting client, no sub-protocol is used if this returns null
+	@Nullable
+	public String selectProtocol(String path, List<String> protocols) {
+		return null;
+	}
+
+	//Answers a plain http request made to the server's port, requests aren't served unless this is overridden
+	//Called on the selector thread, so it must not block
+	public HttpResponse onHttpRequest(String method, String target, Headers headers) {
+		return new HttpResponse(404, "Not Found");
+	}
+
 	protected final void onopen(WebSocket webSocket) {
 		fSockets.add(webSocket);
 		onOpen(webSocket);
@@ -128,9 +232,25 @@ public abstract class AbstractWebsocketServer {
 
 	public abstract void onMessage(WebSocket webSocket, String message);
 
+	protected final void onbinarymessage(WebSocket webSocket, ByteBuffer message) {
+		onBinaryMessage(webSocket, message);
+	}
+
+	//Binary messages are not used by every server so they are ignored unless overridden
+	public void onBinaryMessage(WebSocket webSocket, ByteBuffer message) {
+
+	}
+
+	//Called on the selector thread once a queued frame has been completely written, latency is in nanoseconds from when it was queued
+	//Used for metrics so it must not block, it is ignored unless overridden
+	public void onFrameWritten(WebSocket webSocket, @Nullable String topic, int bytes, long latency) {
+
+	}
+
 	protected final void onclose(WebSocket webSocket) {
-		fSockets.remove(webSocket);
-		onClose(webSocket);
+		if (fSockets.remove(webSocket)) {
+			onClose(webSocket);
+		}
 	}
 
 	public abstract void onClose(WebSocket webSocket);
@@ -140,4 +260,4 @@ public abstract class AbstractWebsocketServer {
 	}
 
 	public abstract void onError(@Nullable WebSocket webSocket, Exception e);
-}
\ No newline at end of file
+}
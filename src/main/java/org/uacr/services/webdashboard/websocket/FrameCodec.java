@@ -0,0 +1,265 @@
+package org.uacr.services.webdashboard.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * FrameCodec encodes and decodes RFC 6455 websocket frames
+ * Encoded frames are immutable so one frame can be written to any number of sockets,
+ * a decoder instance keeps the state of one connection's partially received fragmented message
+ */
+
+public class FrameCodec {
+
+	public static final int CONTINUATION = 0x0;
+	public static final int TEXT = 0x1;
+	public static final int BINARY = 0x2;
+	public static final int CLOSE = 0x8;
+	public static final int PING = 0x9;
+	public static final int PONG = 0xA;
+
+	public static final int CLOSE_NORMAL = 1000;
+	public static final int CLOSE_GOING_AWAY = 1001;
+	public static final int CLOSE_PROTOCOL_ERROR = 1002;
+	public static final int CLOSE_UNSUPPORTED_DATA = 1003;
+	public static final int CLOSE_NO_STATUS = 1005;
+	public static final int CLOSE_INVALID_PAYLOAD = 1007;
+	public static final int CLOSE_POLICY_VIOLATION = 1008;
+	public static final int CLOSE_TOO_BIG = 1009;
+	public static final int CLOSE_INTERNAL_ERROR = 1011;
+
+	//Returned by decode when the buffer does not yet hold a complete frame
+	public static final int INCOMPLETE = -1;
+
+	//Messages larger than this are split into continuation frames
+	private static final int sMaxFragmentSize = 65536;
+	private static final int sMaxControlPayloadSize = 125;
+
+	private final int fMaxMessageSize;
+	private final ByteBuffer fControlPayload;
+	private ByteBuffer fMessage;
+	private int fMessageOpcode;
+	private int fRequiredCapacity;
+
+	public FrameCodec(int maxMessageSize) {
+		fMaxMessageSize = maxMessageSize;
+		fControlPayload = ByteBuffer.allocate(sMaxControlPayloadSize);
+		fMessage = ByteBuffer.allocate(1024);
+		fMessageOpcode = -1;
+		fRequiredCapacity = 0;
+	}
+
+	//Encodes a text message into one frame, or a run of continuation frames if it is large
+	public static ByteBuffer text(String message) {
+		return encode(TEXT, ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	//Encodes the remaining bytes of the payload as a binary message
+	public static ByteBuffer binary(ByteBuffer payload) {
+		return encode(BINARY, payload);
+	}
+
+	public static ByteBuffer ping(ByteBuffer payload) {
+		return encode(PING, payload);
+	}
+
+	public static ByteBuffer pong(ByteBuffer payload) {
+		return encode(PONG, payload);
+	}
+
+	public static ByteBuffer close(int code, String reason) {
+		byte[] reasonBytes = reason.getBytes(StandardCharsets.UTF_8);
+		int reasonLength = Math.min(reasonBytes.length, sMaxControlPayloadSize - 2);
+
+		ByteBuffer payload = ByteBuffer.allocate(2 + reasonLength);
+		payload.putShort((short) code);
+		payload.put(reasonBytes, 0, reasonLength);
+		payload.flip();
+
+		return encode(CLOSE, payload);
+	}
+
+	//Frames the payload with the given opcode, data messages over the fragment size are fragmented
+	public static ByteBuffer encode(int opcode, ByteBuffer payload) {
+		int length = payload.remaining();
+		int fragments = Math.max(1, (length + sMaxFragmentSize - 1) / sMaxFragmentSize);
+
+		if (opcode >= CLOSE) {
+			if (length > sMaxControlPayloadSize) {
+				throw new IllegalArgumentException("Control frame payload too large");
+			}
+			fragments = 1;
+		}
+
+		ByteBuffer frame = ByteBuffer.allocate(length + fragments * 10);
+
+		for (int f = 0; f < fragments; f++) {
+			int fragmentLength = Math.min(payload.remaining(), fragments == 1 ? length : sMaxFragmentSize);
+			boolean last = f == fragments - 1;
+
+			putHeader(frame, f == 0 ? opcode : CONTINUATION, last, fragmentLength);
+
+			ByteBuffer fragment = payload.duplicate();
+			fragment.limit(fragment.position() + fragmentLength);
+			frame.put(fragment);
+			payload.position(payload.position() + fragmentLength);
+		}
+
+		frame.flip();
+
+		return frame.asReadOnlyBuffer();
+	}
+
+	private static void putHeader(ByteBuffer frame, int opcode, boolean fin, int length) {
+		frame.put((byte) ((fin ? 0x80 : 0) | opcode));
+
+		if (length < 126) {
+			frame.put((byte) length);
+		} else if (length <= 0xFFFF) {
+			frame.put((byte) 126);
+			frame.putShort((short) length);
+		} else {
+			frame.put((byte) 127);
+			frame.putLong(length);
+		}
+	}
+
+	//Decodes the next frame from a buffer in write mode, holding received bytes from 0 to its position
+	//Returns the opcode of a completed message or control frame, CONTINUATION for a consumed fragment, or INCOMPLETE
+	public int decode(ByteBuffer buffer) throws FrameException {
+		fRequiredCapacity = 0;
+
+		int available = buffer.position();
+
+		if (available < 2) {
+			return INCOMPLETE;
+		}
+
+		int first = buffer.get(0) & 0xFF;
+		int second = buffer.get(1) & 0xFF;
+
+		boolean fin = (first & 0x80) != 0;
+		int opcode = first & 0x0F;
+		boolean masked = (second & 0x80) != 0;
+		long payloadLength = second & 0x7F;
+		int headerLength = 2;
+
+		if ((first & 0x70) != 0) {
+			throw new FrameException(CLOSE_PROTOCOL_ERROR, "Reserved bits set");
+		}
+
+		if (!masked) {
+			throw new FrameException(CLOSE_PROTOCOL_ERROR, "Client frames must be masked");
+		}
+
+		if (payloadLength == 126) {
+			if (available < 4) {
+				return INCOMPLETE;
+			}
+			payloadLength = buffer.getShort(2) & 0xFFFF;
+			headerLength = 4;
+		} else if (payloadLength == 127) {
+			if (available < 10) {
+				return INCOMPLETE;
+			}
+			payloadLength = buffer.getLong(2);
+			headerLength = 10;
+
+			if (payloadLength < 0) {
+				throw new FrameException(CLOSE_PROTOCOL_ERROR, "Invalid frame length");
+			}
+		}
+
+		boolean control = (opcode & 0x8) != 0;
+
+		if (control) {
+			if (!fin || payloadLength > sMaxControlPayloadSize) {
+				throw new FrameException(CLOSE_PROTOCOL_ERROR, "Invalid control frame");
+			}
+			if (opcode != CLOSE && opcode != PING && opcode != PONG) {
+				throw new FrameException(CLOSE_PROTOCOL_ERROR, "Unknown opcode " + opcode);
+			}
+		} else if (opcode == CONTINUATION) {
+			if (fMessageOpcode < 0) {
+				throw new FrameException(CLOSE_PROTOCOL_ERROR, "Unexpected continuation frame");
+			}
+		} else if (opcode == TEXT || opcode == BINARY) {
+			if (fMessageOpcode >= 0) {
+				throw new FrameException(CLOSE_PROTOCOL_ERROR, "Expected continuation frame");
+			}
+		} else {
+			throw new FrameException(CLOSE_PROTOCOL_ERROR, "Unknown opcode " + opcode);
+		}
+
+		if (!control && (opcode == CONTINUATION ? fMessage.position() : 0) + payloadLength > fMaxMessageSize) {
+			throw new FrameException(CLOSE_TOO_BIG, "Message too large");
+		}
+
+		int frameLength = headerLength + 4 + (int) payloadLength;
+
+		if (available < frameLength) {
+			fRequiredCapacity = frameLength;
+			return INCOMPLETE;
+		}
+
+		int maskOffset = headerLength;
+		int payloadOffset = headerLength + 4;
+
+		ByteBuffer target;
+		if (control) {
+			target = fControlPayload;
+			target.clear();
+		} else {
+			if (opcode != CONTINUATION) {
+				fMessage.clear();
+				fMessageOpcode = opcode;
+			}
+			ensureMessageCapacity(fMessage.position() + (int) payloadLength);
+			target = fMessage;
+		}
+
+		for (int i = 0; i < payloadLength; i++) {
+			target.put((byte) (buffer.get(payloadOffset + i) ^ buffer.get(maskOffset + (i & 0x3))));
+		}
+
+		buffer.flip();
+		buffer.position(frameLength);
+		buffer.compact();
+
+		if (control) {
+			fControlPayload.flip();
+			return opcode;
+		}
+
+		if (!fin) {
+			return CONTINUATION;
+		}
+
+		int messageOpcode = fMessageOpcode;
+		fMessageOpcode = -1;
+		fMessage.flip();
+
+		return messageOpcode;
+	}
+
+	//The payload of the last completed message or control frame returned by decode
+	public ByteBuffer getPayload(int opcode) {
+		return (opcode & 0x8) != 0 ? fControlPayload : fMessage;
+	}
+
+	//The buffer capacity needed to hold the frame that is currently incomplete, or 0 if the buffer is large enough
+	public int getRequiredCapacity() {
+		return fRequiredCapacity;
+	}
+
+	private void ensureMessageCapacity(int capacity) {
+		if (capacity <= fMessage.capacity()) {
+			return;
+		}
+
+		ByteBuffer message = ByteBuffer.allocate(Math.min(fMaxMessageSize, Math.max(capacity, fMessage.capacity() * 2)));
+		fMessage.flip();
+		message.put(fMessage);
+		fMessage = message;
+	}
+}
@@ -0,0 +1,23 @@
+package org.uacr.services.webdashboard.websocket;
+
+import java.io.IOException;
+
+/**
+ * FrameException is thrown when a peer violates the websocket protocol,
+ * it carries the close status code that should be sent back before the connection is dropped
+ */
+
+public class FrameException extends IOException {
+
+	private final int fCloseCode;
+
+	public FrameException(int closeCode, String message) {
+		super(message);
+
+		fCloseCode = closeCode;
+	}
+
+	public int getCloseCode() {
+		return fCloseCode;
+	}
+}
@@ -1,5 +1,6 @@
 package org.uacr.services.webdashboard.websocket;
 
+import javax.annotation.Nullable;
 import java.util.HashMap;
 
 public class Headers extends HashMap<String, String> {
@@ -20,6 +21,22 @@ public class Headers extends HashMap<String, String> {
 		put(parts[0], parts[1]);
 	}
 
+	//Header names are case insensitive, returns the value of the first header matching the name or null
+	@Nullable
+	public String getHeader(String name) {
+		for (Entry<String, String> header : this.entrySet()) {
+			if (header.getKey().equalsIgnoreCase(name)) {
+				return header.getValue();
+			}
+		}
+
+		return null;
+	}
+
+	public String getLine() {
+		return fLine;
+	}
+
 	public String getHeaderText() {
 		StringBuilder headerText = new StringBuilder();
 
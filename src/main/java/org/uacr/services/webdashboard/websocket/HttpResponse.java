@@ -0,0 +1,43 @@
+package org.uacr.services.webdashboard.websocket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * HttpResponse is the answer to a plain http request made to the websocket port
+ * The body is written as it is, so an immutable buffer can be shared between any number of responses
+ */
+
+public class HttpResponse {
+
+	private final int fStatus;
+	private final String fReason;
+	private final Headers fHeaders;
+	private final ByteBuffer fBody;
+
+	public HttpResponse(int status, String reason, ByteBuffer body) {
+		fStatus = status;
+		fReason = reason;
+		fHeaders = new Headers();
+		fBody = body.asReadOnlyBuffer();
+	}
+
+	public HttpResponse(int status, String reason) {
+		this(status, reason, ByteBuffer.allocate(0));
+	}
+
+	public int getStatus() {
+		return fStatus;
+	}
+
+	public String getReason() {
+		return fReason;
+	}
+
+	public Headers getHeaders() {
+		return fHeaders;
+	}
+
+	public ByteBuffer getBody() {
+		return fBody.duplicate();
+	}
+}
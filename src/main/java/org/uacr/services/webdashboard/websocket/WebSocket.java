@@ -1,106 +1,323 @@
 package org.uacr.services.webdashboard.websocket;
 
-import org.uacr.utilities.LimitedSizeQueue;
-
 import javax.annotation.Nullable;
-import java.io.*;
+import java.io.EOFException;
+import java.io.IOException;
 import java.net.InetAddress;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.util.Base64;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class WebSocket {
 
-	private final Socket fSocket;
-	private final InputStream fInput;
-	private final BufferedReader fReader;
-	private final OutputStream fOutput;
+	private static final int sInitialReadBufferSize = 8192;
+	private static final int sMaxHandshakeSize = 16384;
+	private static final int sMaxMessageSize = 1 << 20;
+	//Frames sent with a topic are coalesced once this many bytes are waiting to be written
+	private static final long sMaxQueuedBytes = 512 * 1024;
+	//A client this far behind is dropped, frames without a topic can't be coalesced
+	private static final long sMaxBacklogBytes = 4 * sMaxQueuedBytes;
+
+	private final SocketChannel fChannel;
+	private final SelectionKey fKey;
 	private final InetAddress fAddress;
 	private final AbstractWebsocketServer fServer;
+	private final Deque<QueuedFrame> fSendQueue;
+	private final Set<String> fStaleTopics;
+	private final AtomicBoolean fWriteRequested;
+	private final FrameCodec fCodec;
+	private final CharsetDecoder fTextDecoder;
+	private ByteBuffer fReadBuffer;
+	@Nullable
+	private ByteBuffer fWriteBuffer;
+	//The topic, length and queued time of the frame being written
+	@Nullable
+	private String fWriteTopic;
+	private int fWriteLength;
+	private long fWriteQueuedTime;
 	@Nullable
 	private String fPath;
 	@Nullable
+	private String fProtocol;
+	@Nullable
 	private Headers fHeaders;
-	private LimitedSizeQueue<String> fSendQueue;
+	private boolean fOpen;
+	//Set once the connection has been sent an http response instead of being upgraded
+	private boolean fHttp;
+	private volatile boolean fClosing;
+	private boolean fClosed;
+	private long fLastReceivedTime;
+	private long fQueuedBytes;
+	private long fDroppedFrames;
+	private long fDroppedBytes;
+	private long fCoalesceCount;
+	private long fSentFrames;
+	private long fSentBytes;
+
+	protected WebSocket(SocketChannel channel, SelectionKey key, AbstractWebsocketServer server) {
+		fChannel = channel;
+		fKey = key;
+		fAddress = channel.socket().getInetAddress();
+		fSendQueue = new ArrayDeque<>();
+		fStaleTopics = new HashSet<>();
+		fWriteRequested = new AtomicBoolean(false);
+		fCodec = new FrameCodec(sMaxMessageSize);
+		fTextDecoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		fReadBuffer = ByteBuffer.allocate(sInitialReadBufferSize);
+		fLastReceivedTime = System.currentTimeMillis();
 
-	protected WebSocket(Socket socket, AbstractWebsocketServer server) throws Exception {
-		fSocket = socket;
-		fSocket.setSoTimeout(1);
+		fServer = server;
+	}
 
-		fInput = socket.getInputStream();
-		fReader = new BufferedReader(new InputStreamReader(fInput));
-		fOutput = socket.getOutputStream();
-		fAddress = socket.getInetAddress();
-		fSendQueue = new LimitedSizeQueue<>(1000);
+	//Parses the next http request once its full header block has arrived, returns false if it hasn't yet
+	//Websocket upgrade requests open the socket, any other request is answered by the server's http handler
+	private boolean readRequest() throws Exception {
+		int end = indexOfHeaderEnd(fReadBuffer);
 
-		fServer = server;
+		if (end < 0) {
+			if (fReadBuffer.position() >= sMaxHandshakeSize) {
+				throw new IOException("Handshake too large");
+			}
+			return false;
+		}
+
+		fReadBuffer.flip();
+		byte[] headerBytes = new byte[end];
+		fReadBuffer.get(headerBytes);
+		fReadBuffer.compact();
+
+		String[] lines = new String(headerBytes, StandardCharsets.ISO_8859_1).split("\r\n");
+
+		fHeaders = new Headers(lines[0].trim());
+
+		for (int l = 1; l < lines.length; l++) {
+			fHeaders.putHeader(lines[l].trim());
+		}
+
+		@Nullable
+		String key = fHeaders.getHeader("Sec-WebSocket-Key");
+
+		if (key == null) {
+			respond(fHeaders);
+			return true;
+		}
+
+		Headers responseHeaders = new Headers("HTTP/1.1 101 Switching Protocols");
+
+		responseHeaders.put("Connection", "Upgrade");
+		responseHeaders.put("Upgrade", "websocket");
+		responseHeaders.put("Sec-WebSocket-Accept", Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1").digest((key + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11").getBytes(StandardCharsets.UTF_8))));
+
+		fPath = lines[0].split(" ")[1];
+
+		@Nullable
+		String requestedProtocols = fHeaders.getHeader("Sec-WebSocket-Protocol");
 
-		handshake();
+		if (requestedProtocols != null) {
+			List<String> protocols = new ArrayList<>();
+			for (String protocol : requestedProtocols.split(",")) {
+				protocols.add(protocol.trim());
+			}
+
+			fProtocol = fServer.selectProtocol(getPath(), protocols);
+
+			if (fProtocol != null) {
+				responseHeaders.put("Sec-WebSocket-Protocol", fProtocol);
+			}
+		}
+
+		fWriteBuffer = ByteBuffer.wrap(responseHeaders.getHeaderText().getBytes(StandardCharsets.ISO_8859_1));
+		fWriteTopic = null;
+		fWriteLength = fWriteBuffer.remaining();
+		fWriteQueuedTime = System.nanoTime();
+		fOpen = true;
 
-		fServer.onopen(this);
+		return true;
 	}
 
-	private void handshake() throws Exception {
-		while (!fReader.ready()) ;
+	//Queues the response to a plain http request, the connection is kept open for more requests unless the client asked otherwise
+	private void respond(Headers request) throws Exception {
+		String[] requestLine = request.getLine().split(" ");
+
+		if (requestLine.length < 3) {
+			throw new IOException("Invalid request line");
+		}
+
+		String method = requestLine[0];
+		String version = requestLine[2];
+
+		@Nullable
+		String connection = request.getHeader("Connection");
+		boolean keepAlive = version.equals("HTTP/1.1") ? !"close".equalsIgnoreCase(connection) : "keep-alive".equalsIgnoreCase(connection);
+
+		HttpResponse response;
+		if (!method.equals("GET") && !method.equals("HEAD")) {
+			//Request bodies aren't read, so the connection can't be reused
+			response = new HttpResponse(405, "Method Not Allowed");
+			response.getHeaders().put("Allow", "GET, HEAD");
+			keepAlive = false;
+		} else {
+			response = fServer.onHttpRequest(method, requestLine[1], request);
+		}
 
-		fHeaders = new Headers(fReader.readLine().trim());
+		ByteBuffer body = response.getBody();
+		boolean hasBody = !method.equals("HEAD") && response.getStatus() != 304 && response.getStatus() != 204;
 
-		while (fReader.ready()) {
-			String line = fReader.readLine().trim();
-			fHeaders.putHeader(line);
+		Headers responseHeaders = new Headers("HTTP/1.1 " + response.getStatus() + " " + response.getReason());
+		responseHeaders.putAll(response.getHeaders());
+		if (response.getStatus() != 304 && response.getStatus() != 204) {
+			responseHeaders.put("Content-Length", String.valueOf(body.remaining()));
 		}
+		responseHeaders.put("Connection", keepAlive ? "keep-alive" : "close");
 
-		if (fHeaders.containsKey("Sec-WebSocket-Key")) {
-			Headers responseHeaders = new Headers("HTTP/1.1 101 Switching Protocols");
+		synchronized (fSendQueue) {
+			enqueue(ByteBuffer.wrap(responseHeaders.getHeaderText().getBytes(StandardCharsets.ISO_8859_1)), null);
 
-			responseHeaders.put("Connection", "Upgrade");
-			responseHeaders.put("Upgrade", "websocket");
-			responseHeaders.put("Sec-WebSocket-Accept", Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1").digest((fHeaders.get("Sec-WebSocket-Key") + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11").getBytes(StandardCharsets.UTF_8))));
+			if (hasBody && body.hasRemaining()) {
+				enqueue(body, null);
+			}
 
-			write(responseHeaders.getHeaderText().getBytes());
+			//The connection is closed once the response has been written
+			if (!keepAlive) {
+				fClosing = true;
+			}
 		}
 
-		fPath = fHeaders.getHeaderText().split(" ")[1];
+		fHttp = true;
+
+		onWritable();
+	}
+
+	//Returns the length of the header block including the blank line, or -1 if it is incomplete
+	private static int indexOfHeaderEnd(ByteBuffer buffer) {
+		for (int i = 3; i < buffer.position(); i++) {
+			if (buffer.get(i - 3) == '\r' && buffer.get(i - 2) == '\n' && buffer.get(i - 1) == '\r' && buffer.get(i) == '\n') {
+				return i + 1;
+			}
+		}
+		return -1;
 	}
 
 	public void send(String message) {
-		fSendQueue.add(message);
+		sendFrame(textFrame(message));
+	}
+
+	//Queues a frame created by FrameCodec, the frame is shared so only a read only view of it is ever written
+	public void sendFrame(ByteBuffer frame) {
+		sendFrame(frame, null);
 	}
 
-	private void writeMessage(String message) {
-		byte[] messageBytes = message.getBytes();
+	//Queues a frame that can be replaced by a newer snapshot of the same topic,
+	//if the client has fallen behind the queued frames of the topic are dropped and the topic is marked stale
+	public void sendFrame(ByteBuffer frame, @Nullable String topic) {
+		if (fClosing) {
+			return;
+		}
 
-		byte[] bytes;
+		boolean overflow = false;
 
-		if (message.length() < 126) {
-			bytes = new byte[2 + message.length()];
+		synchronized (fSendQueue) {
+			//Nothing can follow the close frame
+			if (fClosing) {
+				return;
+			}
 
-			bytes[0] = (byte) 129;
-			bytes[1] = (byte) message.length();
+			if (topic != null && (fStaleTopics.contains(topic) || fQueuedBytes + frame.remaining() > sMaxQueuedBytes)) {
+				coalesce(frame, topic);
+				return;
+			}
 
-			for (int b = 0; b < messageBytes.length; b++) {
-				bytes[b + 2] = messageBytes[b];
+			if (fQueuedBytes + frame.remaining() > sMaxBacklogBytes) {
+				overflow = true;
+			} else {
+				enqueue(frame, topic);
 			}
+		}
+
+		if (overflow) {
+			close(FrameCodec.CLOSE_POLICY_VIOLATION, "Client too slow");
 		} else {
-			bytes = new byte[4 + message.length()];
+			requestWrite();
+		}
+	}
+
+	//Drops the new frame and every queued frame of the topic, the owner will send a fresh snapshot instead
+	private void coalesce(ByteBuffer frame, String topic) {
+		if (fStaleTopics.add(topic)) {
+			fCoalesceCount++;
 
-			bytes[0] = (byte) 129;
-			bytes[1] = (byte) 126;
+			Iterator<QueuedFrame> queued = fSendQueue.iterator();
+			while (queued.hasNext()) {
+				QueuedFrame queuedFrame = queued.next();
 
-			bytes[2] = (byte) ((message.length() >> 8) & 0xFF);
-			bytes[3] = (byte) (message.length() & 0xFF);
+				if (topic.equals(queuedFrame.fTopic)) {
+					queued.remove();
 
-			for (int b = 0; b < messageBytes.length; b++) {
-				bytes[b + 4] = messageBytes[b];
+					fQueuedBytes -= queuedFrame.fFrame.remaining();
+					fDroppedFrames++;
+					fDroppedBytes += queuedFrame.fFrame.remaining();
+				}
 			}
 		}
 
-		try {
-			write(bytes);
-		} catch (Exception e) {
+		fDroppedFrames++;
+		fDroppedBytes += frame.remaining();
+	}
+
+	//Returns true once if the topic's queued frames were dropped, the caller should send a full snapshot of it next
+	public boolean takeStale(String topic) {
+		synchronized (fSendQueue) {
+			return fStaleTopics.remove(topic);
+		}
+	}
+
+	private void enqueue(ByteBuffer frame, @Nullable String topic) {
+		fSendQueue.add(new QueuedFrame(frame.asReadOnlyBuffer(), topic));
+		fQueuedBytes += frame.remaining();
+	}
+
+	//Control frames skip the backlog limits so pongs and close frames are never dropped
+	private void enqueue(ByteBuffer frame) {
+		synchronized (fSendQueue) {
+			enqueue(frame, null);
+		}
+
+		requestWrite();
+	}
+
+	private void requestWrite() {
+		if (fWriteRequested.compareAndSet(false, true)) {
+			fServer.requestWrite(this);
+		}
+	}
+
+	//Encodes a message into an immutable text frame that can be sent to any number of sockets
+	public static ByteBuffer textFrame(String message) {
+		return FrameCodec.text(message);
+	}
+
+	//Starts the closing handshake, the connection is dropped once the close frame has been written
+	//The frame is queued and the socket marked closing under the queue's lock, which onWritable checks before dropping the connection
+	public void close(int code, String reason) {
+		synchronized (fSendQueue) {
+			if (fClosing) {
+				return;
+			}
+
+			enqueue(FrameCodec.close(code, reason), null);
+			fClosing = true;
 		}
+
+		requestWrite();
 	}
 
 	public String getPath() {
@@ -110,88 +327,291 @@ public class WebSocket {
 		return fPath;
 	}
 
-	private void write(byte[] message) throws IOException {
-		fOutput.write(message);
-		fOutput.flush();
+	//The sub-protocol agreed on in the handshake, or an empty string if the client didn't ask for one
+	public String getProtocol() {
+		if (fProtocol == null) {
+			return "";
+		}
+		return fProtocol;
 	}
 
-	protected void update() {
-		try {
-			while (!fSendQueue.isEmpty()) {
-				writeMessage(fSendQueue.remove());
-			}
+	public InetAddress getAddress() {
+		return fAddress;
+	}
+
+	//Bytes waiting to be written to the client
+	public long getQueuedBytes() {
+		synchronized (fSendQueue) {
+			return fQueuedBytes;
+		}
+	}
 
+	public int getQueuedFrames() {
+		synchronized (fSendQueue) {
+			return fSendQueue.size();
+		}
+	}
+
+	//How long the oldest queued frame has been waiting, in milliseconds
+	public long getLag() {
+		synchronized (fSendQueue) {
 			@Nullable
-			String message = null;
+			QueuedFrame oldest = fSendQueue.peek();
+			return oldest == null ? 0 : (System.nanoTime() - oldest.fQueuedTime) / 1000000;
+		}
+	}
 
-			do {
-				message = read();
+	public long getDroppedFrames() {
+		synchronized (fSendQueue) {
+			return fDroppedFrames;
+		}
+	}
 
-				if (message != null) {
-					if (message.equals("keepalive")) {
-						writeMessage("keepalive");
-						return;
-					}
+	public long getDroppedBytes() {
+		synchronized (fSendQueue) {
+			return fDroppedBytes;
+		}
+	}
 
-					for (byte b : message.getBytes()) {
-						if (b < 0) {
-							fServer.onclose(this);
-							return;
-						}
-					}
+	//The number of times a topic backlog has been replaced by a snapshot
+	public long getCoalesceCount() {
+		synchronized (fSendQueue) {
+			return fCoalesceCount;
+		}
+	}
 
-					fServer.onmessage(this, message);
-				}
-			} while (message != null);
-		} catch (Exception e) {
-			fServer.onclose(this);
+	public long getSentFrames() {
+		synchronized (fSendQueue) {
+			return fSentFrames;
 		}
 	}
 
-	protected void close() {
-		byte[] bytes = new byte[]{(byte) 1000, (byte) 0};
+	public long getSentBytes() {
+		synchronized (fSendQueue) {
+			return fSentBytes;
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (fSendQueue) {
+			return "WebSocket " + fAddress.getHostAddress() + getPath() +
+					" [queued " + fQueuedBytes + " bytes, dropped " + fDroppedFrames + " frames, coalesced " + fCoalesceCount + " times]";
+		}
+	}
+
+	//Called on the selector thread when the channel has bytes to read
+	protected void onReadable() throws Exception {
+		if (!fReadBuffer.hasRemaining()) {
+			growReadBuffer(fReadBuffer.capacity() * 2);
+		}
+
+		if (fChannel.read(fReadBuffer) < 0) {
+			throw new EOFException();
+		}
+
+		fLastReceivedTime = System.currentTimeMillis();
+
+		if (!fOpen) {
+			while (!fOpen && !fClosing && readRequest()) {
+
+			}
+
+			if (!fOpen) {
+				return;
+			}
+
+			onWritable();
+			fServer.onopen(this);
+		}
 
 		try {
-			write(bytes);
-		} catch (IOException e) {
+			while (!fClosed) {
+				int opcode = fCodec.decode(fReadBuffer);
 
+				if (opcode == FrameCodec.INCOMPLETE) {
+					if (fCodec.getRequiredCapacity() > fReadBuffer.capacity()) {
+						growReadBuffer(fCodec.getRequiredCapacity());
+					}
+					return;
+				}
+
+				onFrame(opcode, fCodec.getPayload(opcode));
+			}
+		} catch (FrameException e) {
+			close(e.getCloseCode(), e.getMessage());
 		}
 	}
 
-	@Nullable
-	private String read() throws Exception {
-		try {
-			byte[] control = new byte[2];
+	private void onFrame(int opcode, ByteBuffer payload) throws FrameException {
+		switch (opcode) {
+			case FrameCodec.TEXT: {
+				if (fClosing) {
+					return;
+				}
 
-			fInput.read(control);
+				String message;
+				try {
+					message = fTextDecoder.decode(payload).toString();
+				} catch (CharacterCodingException e) {
+					throw new FrameException(FrameCodec.CLOSE_INVALID_PAYLOAD, "Invalid UTF-8 text");
+				}
 
-			int textLength = (control[1] & 0xFF) - 128;
+				//Kept for pages that check their connection by echoing text, the socket itself is kept alive with pings
+				if (message.equals("keepalive")) {
+					send("keepalive");
+					return;
+				}
 
-			if (textLength > 125) {
-				byte[] length = new byte[2];
-				fInput.read(length);
-				textLength = ((length[0] & 0xFF) << 8) | (length[1] & 0xFF);
+				fServer.onmessage(this, message);
+				break;
+			}
+			case FrameCodec.BINARY: {
+				if (!fClosing) {
+					fServer.onbinarymessage(this, payload);
+				}
+				break;
+			}
+			case FrameCodec.PING: {
+				enqueue(FrameCodec.pong(payload));
+				break;
 			}
+			case FrameCodec.CLOSE: {
+				if (fClosing) {
+					disconnect();
+					return;
+				}
 
-			byte[] key = new byte[4];
-			fInput.read(key);
+				int code = FrameCodec.CLOSE_NORMAL;
+				if (payload.remaining() >= 2) {
+					code = payload.getShort() & 0xFFFF;
+				}
+				if (code == FrameCodec.CLOSE_NO_STATUS) {
+					code = FrameCodec.CLOSE_NORMAL;
+				}
 
-			byte[] encoded = new byte[textLength];
-			fInput.read(encoded);
+				close(code, "");
+				break;
+			}
+		}
+	}
+
+	//Called on the selector thread when the channel can accept more bytes
+	protected void onWritable() throws IOException {
+		fWriteRequested.set(false);
+
+		//Only true once the queue was found empty while closing, so a close frame queued during this call is still written
+		boolean drained = false;
+
+		while (!fClosed) {
+			if (fWriteBuffer == null) {
+				synchronized (fSendQueue) {
+					if (!fOpen && !fHttp) {
+						drained = fClosing;
+						break;
+					}
+
+					@Nullable
+					QueuedFrame queuedFrame = fSendQueue.poll();
+
+					if (queuedFrame == null) {
+						drained = fClosing;
+						break;
+					}
+
+					fWriteBuffer = queuedFrame.fFrame;
+					fWriteTopic = queuedFrame.fTopic;
+					fWriteLength = fWriteBuffer.remaining();
+					fWriteQueuedTime = queuedFrame.fQueuedTime;
+					fQueuedBytes -= fWriteBuffer.remaining();
+					fSentFrames++;
+					fSentBytes += fWriteBuffer.remaining();
+				}
+			}
 
-			byte[] decoded = new byte[textLength];
-			for (int i = 0; i < textLength; i++) {
-				decoded[i] = (byte) (encoded[i] ^ key[i & 0x3]);
+			fChannel.write(fWriteBuffer);
+
+			if (fWriteBuffer.hasRemaining()) {
+				fKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
 			}
 
-			return new String(decoded);
+			fWriteBuffer = null;
+
+			fServer.onFrameWritten(this, fWriteTopic, fWriteLength, System.nanoTime() - fWriteQueuedTime);
+		}
 
-		} catch (SocketTimeoutException e) {
+		if (drained) {
+			disconnect();
+			return;
+		}
 
-		} catch (Exception e) {
-			throw e;
+		if (fKey.isValid()) {
+			fKey.interestOps(SelectionKey.OP_READ);
 		}
+	}
 
-		return null;
+	//Called periodically on the selector thread, pings the client and drops it if nothing has been heard for too long
+	protected void heartbeat(long currentTime, long timeout) {
+		if (currentTime - fLastReceivedTime > timeout) {
+			disconnect();
+		} else if (fOpen) {
+			enqueue(FrameCodec.ping(ByteBuffer.allocate(0)));
+		}
+	}
+
+	//Immediately sends a going away close frame and drops the connection, used when the server shuts down
+	protected void close() {
+		if (fOpen) {
+			try {
+				fChannel.write(FrameCodec.close(FrameCodec.CLOSE_GOING_AWAY, "Server shutting down"));
+			} catch (IOException e) {
+
+			}
+		}
+
+		disconnect();
+	}
+
+	//Closes the channel and notifies the server, safe to call more than once
+	protected void disconnect() {
+		if (fClosed) {
+			return;
+		}
+		fClosed = true;
+		fClosing = true;
+
+		fKey.cancel();
+
+		try {
+			fChannel.close();
+		} catch (IOException e) {
+
+		}
+
+		if (fOpen) {
+			fServer.onclose(this);
+		}
+	}
+
+	private void growReadBuffer(int capacity) {
+		ByteBuffer buffer = ByteBuffer.allocate(capacity);
+		fReadBuffer.flip();
+		buffer.put(fReadBuffer);
+		fReadBuffer = buffer;
+	}
+
+	private static class QueuedFrame {
+
+		private final ByteBuffer fFrame;
+		@Nullable
+		private final String fTopic;
+		private final long fQueuedTime;
+
+		private QueuedFrame(ByteBuffer frame, @Nullable String topic) {
+			fFrame = frame;
+			fTopic = topic;
+			fQueuedTime = System.nanoTime();
+		}
 	}
-}
\ No newline at end of file
+}
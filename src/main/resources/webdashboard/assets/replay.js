@@ -0,0 +1,101 @@
+//Shows controls for a recorded session being replayed by the robot code
+//The controls are only added to the page once a "replay_status" message is received
+
+//The speeds the replay can be played at
+const replaySpeeds = [0.25, 0.5, 1, 2, 4, 8, 16];
+
+//Whether the seek slider is being dragged so status messages don't move it
+let replaySeeking = false;
+
+//Updates the replay controls from a "replay_status" message, controls are sent over "socket"
+//A status with an "error" is the answer to a control the robot code couldn't apply
+function updateReplay(socket, messageData) {
+
+    if (messageData.get("error") !== undefined) {
+        console.error("Replay control failed: " + messageData.get("error"));
+    }
+
+    let replayBar = document.getElementById("replayBar");
+
+    if (replayBar === null) {
+        //If the controls haven't been added yet, create them at the bottom of the page
+        replayBar = createReplayBar(socket);
+    }
+
+    let time = parseInt(messageData.get("time"));
+    let duration = parseInt(messageData.get("duration"));
+    let paused = messageData.get("paused") === "true";
+
+    //Show play when the replay is paused and pause when it is playing
+    document.getElementById("replayPlay").innerHTML = paused ? "Play" : "Pause";
+    document.getElementById("replayPlay").dataset.paused = paused;
+
+    document.getElementById("replaySpeed").value = parseFloat(messageData.get("speed"));
+
+    let slider = document.getElementById("replaySlider");
+    slider.max = duration;
+    if (!replaySeeking) {
+        slider.value = time;
+    }
+
+    document.getElementById("replayTime").innerHTML = formatReplayTime(time) + " / " + formatReplayTime(duration);
+}
+
+//Creates the play button, speed selector, seek slider and time of the replay controls
+function createReplayBar(socket) {
+
+    let replayBar = document.createElement("div");
+    replayBar.id = "replayBar";
+    replayBar.className = "replayBar unselectable";
+
+    let play = document.createElement("button");
+    play.id = "replayPlay";
+    play.onclick = function () {
+        //Ask for the opposite of the current state
+        sendReplayRequest(socket, "paused", play.dataset.paused !== "true");
+    };
+
+    let speed = document.createElement("select");
+    speed.id = "replaySpeed";
+    for (let s of replaySpeeds) {
+        speed.innerHTML += "<option value=\"" + s + "\">" + s + "x</option>";
+    }
+    speed.onchange = function () {
+        sendReplayRequest(socket, "speed", speed.value);
+    };
+
+    let slider = document.createElement("input");
+    slider.id = "replaySlider";
+    slider.type = "range";
+    slider.min = 0;
+    slider.oninput = function () {
+        replaySeeking = true;
+    };
+    slider.onchange = function () {
+        //Seek once the slider is let go
+        replaySeeking = false;
+        sendReplayRequest(socket, "seek", slider.value);
+    };
+
+    let time = document.createElement("span");
+    time.id = "replayTime";
+
+    replayBar.append(play, speed, slider, time);
+    document.body.appendChild(replayBar);
+
+    return replayBar;
+}
+
+//Sends a replay control to the robot code
+function sendReplayRequest(socket, key, value) {
+    if (socket.readyState === WebSocket.OPEN) {
+        socket.send(new UrlFormData().append("request", "replay").append(key, value).toString());
+    }
+}
+
+//Formats milliseconds as minutes and seconds
+function formatReplayTime(milliseconds) {
+    let seconds = Math.floor(milliseconds / 1000);
+
+    return Math.floor(seconds / 60) + ":" + String(seconds % 60).padStart(2, "0");
+}
@@ -1,17 +1,28 @@
 //Stores, parses, and encodes data sent and received from the robot code
 //Encoded format: "key=value&key=value&key=value"
+//"%", "&" and "=" in keys and values are escaped as "%25", "%26" and "%3D" the same way the robot code escapes them
 function UrlFormData(x) {
 
     this.dict = {};
 
     //Decodes the url form data from a string into a js object
+    //A value is everything after the first "=" of its pair, pairs without an "=" are skipped
     if (x !== undefined) {
-        let parts = x.split("&");
+        let pairStart = 0;
+        let equals = -1;
 
-        for (let p in parts) {
-            if (parts[p].includes("=")) {
-                let [first, ...second] = parts[p].split("=");
-                this.dict[first] = second.join("=");
+        for (let i = 0; i <= x.length; i++) {
+            let c = i < x.length ? x.charCodeAt(i) : 38;
+
+            if (c === 61 && equals < 0) {
+                equals = i;
+            } else if (c === 38) {
+                if (equals >= 0) {
+                    this.dict[unescapeFormData(x, pairStart, equals)] = unescapeFormData(x, equals + 1, i);
+                }
+
+                pairStart = i + 1;
+                equals = -1;
             }
         }
     }
@@ -29,14 +40,31 @@ function UrlFormData(x) {
 
     //Encodes the url form data from a js object into a string
     this.toString = function () {
-        let r = "";
+        let r = [];
 
         for (let k in this.dict) {
-            r += k + "=" + this.dict[k] + "&";
+            r.push(escapeFormData(k) + "=" + escapeFormData(this.dict[k]));
         }
 
-        if (r.length === 0) return "";
-
-        return r.slice(0, r.length - 1);
+        return r.join("&");
     };
-}
\ No newline at end of file
+}
+
+//Unescapes part of a message, a "%" that isn't followed by two hex digits is kept as is
+function unescapeFormData(data, start, end) {
+    let escape = data.indexOf("%", start);
+
+    if (escape < 0 || escape >= end) {
+        return data.substring(start, end);
+    }
+
+    return data.substring(start, end).replace(/%([0-9a-fA-F]{2})/g, function (match, hex) {
+        return String.fromCharCode(parseInt(hex, 16));
+    });
+}
+
+function escapeFormData(value) {
+    return String(value).replace(/[%&=]/g, function (c) {
+        return c === "%" ? "%25" : c === "&" ? "%26" : "%3D";
+    });
+}
@@ -18,6 +18,12 @@ let lastLegendItem;
 //If the graph is currently paused
 let paused = false;
 
+//Websocket connection with the robot code used to ask for the history of values added to the graph
+let socket;
+
+//The time each dataset waiting for its history was created, history after that time is already on the graph
+let historyRequests = {};
+
 //Keeps track of the original legend onClick so that it can still be called
 //The original onClick toggles if the dataset is show on the graph
 const originalLegendOnClick = Chart.defaults.global.legend.onClick;
@@ -240,6 +246,7 @@ function update() {
                     //This allows the user to see how the variable changes over time
 
                     //Adding the dataset to the graph with its name creating x and v values
+                    //If the dataset is new, ask for the values it had before it was added
                     addData(dataset, [{
 
                         //Set the x value to the current time, using modulo to prevent the value from getting to huge
@@ -247,7 +254,7 @@ function update() {
 
                         //Set the y to the data value
                         y: graphValues[dataset].value
-                    }]);
+                    }], true);
 
                     graphValues[dataset].updated = false;
                 }
@@ -261,7 +268,8 @@ function update() {
 //Adds data to a dataset, creating a new dataset if needed
 //"label" is the label of the dataset
 //"data" is the data to be added to the dataset
-function addData(label, data) {
+//"history" is whether a new dataset should be filled in with the value's history from the robot code
+function addData(label, data, history) {
 
     //Loop through all of the datasets on the graph to try and find a dataset with a matching label
     for (let dataset of graph.data.datasets) {
@@ -310,6 +318,10 @@ function addData(label, data) {
     //Add the dataset to the graph
     graph.data.datasets.push(dataset);
 
+    if (history) {
+        requestHistory(label);
+    }
+
     //Update the graph to show changes
     graph.update();
 
@@ -320,6 +332,100 @@ function addData(label, data) {
     }
 }
 
+//Asks the robot code for the downsampled history of a value over the last 5 minutes
+function requestHistory(label) {
+
+    historyRequests[label] = new Date().getTime();
+
+    if (socket !== undefined && socket.readyState === WebSocket.OPEN) {
+        socket.send(new UrlFormData().append("request", "history").append("keys", label).append("points", 500).toString());
+    }
+}
+
+//Adds the history sent from the robot code to the start of each dataset
+//"values" is the history of each value, the name then each point as how many milliseconds ago it was and the value
+function addHistory(values) {
+
+    let now = new Date().getTime();
+
+    for (let value of values.split("~")) {
+        let parts = value.split("*");
+        let label = parts[0];
+        let createdTime = historyRequests[label];
+
+        if (createdTime === undefined) {
+            continue;
+        }
+
+        delete historyRequests[label];
+
+        //Only the points from before the dataset was created are added, the rest are already on the graph
+        let points = [];
+        for (let point of parts.slice(1)) {
+            let [age, y] = point.split(",");
+            let time = now - parseInt(age);
+
+            if (time < createdTime) {
+                points.push({x: time % 1000000, y: parseFloat(y)});
+            }
+        }
+
+        for (let dataset of graph.data.datasets) {
+            if (dataset.label === label) {
+                dataset.data.unshift(...points);
+            }
+        }
+    }
+
+    //Update the graph to show changes
+    graph.update();
+}
+
+//Code to create, maintain, and reopen a connection with the server in the robot code
+function connect() {
+
+    //Create a new websocket with the same host and port as the page and path "/graph"
+    //to ask the server in the robot code for the history of values
+    socket = new WebSocket("ws://" + window.location.host + "/graph");
+
+    //Called when the connection opens
+    socket.onopen = function () {
+
+        //Ask for the history of datasets added while the page was disconnected
+        for (let label of Object.getOwnPropertyNames(historyRequests)) {
+            socket.send(new UrlFormData().append("request", "history").append("keys", label).append("points", 500).toString());
+        }
+    };
+
+    //Called when the connection closes
+    socket.onclose = function () {
+
+        //Try to reopen the connection after 1 second
+        setTimeout(function () {
+            connect();
+        }, 1000);
+    };
+
+    //Called when a message is received over the connection
+    socket.onmessage = function (message) {
+
+        //Turn message data into UrlFormData
+        let messageData = new UrlFormData(message.data);
+
+        //Case statement on the message response type
+        switch (messageData.get("response")) {
+            case "history":
+                //If message response type is history, add the values from before each dataset was created
+                if (messageData.get("error") !== undefined) {
+                    console.error("History request failed: " + messageData.get("error"));
+                } else {
+                    addHistory(messageData.get("values"));
+                }
+                break;
+        }
+    };
+}
+
 //Removes all datasets from the graph
 function removeData() {
     //Clears all datasets
@@ -362,4 +468,7 @@ function setVisibility(element, visible) {
 
 //Updates each dataset on the graph every 16 milliseconds
 //Similar to the speed of robot updates to avoid missing data while not using too much processing power
-setInterval(update, 15);
\ No newline at end of file
+setInterval(update, 15);
+
+//Connect to the robot code for value history
+connect();
\ No newline at end of file
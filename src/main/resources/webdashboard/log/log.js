@@ -10,6 +10,18 @@ let selectedHighlightIndex = 0;
 //The total number of highlights
 let numHighlights = 0;
 
+//The sequence of the oldest message on the page, older messages are requested from before it
+let oldestSequence = undefined;
+
+//The number of messages requested from the robot's log history at a time
+const historyPageSize = 500;
+
+//The number of bytes of a journal segment requested at a time
+const journalChunkSize = 256 * 1024;
+
+//The names of the log levels by ordinal, as listed in the journal index
+let journalLevels = [];
+
 //Called when the clear log button is pressed,
 //clears all text from the textArea
 function clearLog() {
@@ -214,6 +226,158 @@ function download(data, filename, type) {
     }
 }
 
+//Creates a div for a raw "TYPE:...MESSAGE:..." log message, returns undefined if the message isn't correctly formatted
+function createLine(rawMessage) {
+
+    //Split the raw message data into the type and message
+    let messageParts = rawMessage.split("MESSAGE:");
+
+    //Get the type and message from the message parts
+    let type = messageParts[0];
+    let message = messageParts[1];
+
+    //If this message isn't correctly formatted skip it
+    if (type === undefined || message === undefined) {
+        return undefined;
+    }
+
+    //Create a dive for the log message
+    let div = document.createElement("DIV");
+
+    //Set the id of the div to the message,
+    //so that an unmodified version of the message can be accessed for searching later
+    div.id = message;
+
+    //Add the textLine css class to the div so it is styled correctly
+    div.classList.add("textLine");
+
+    if (type === "INFO") {
+        //If the message is an info message,
+        //add the infoLine css class to the div so it is styled correctly
+        div.classList.add("infoLine");
+    } else if (type === "ERROR") {
+        //If the message is an error message,
+        //add the errorLine css class to the div so it is styled correctly
+        div.classList.add("errorLine");
+    }
+
+    //Set the innerText of the div to the message, so that it is displayed on the page
+    div.innerText = message;
+
+    return div;
+}
+
+//Called when the older button is pressed, and when the page connects,
+//asks the robot for the page of its log history before the oldest message on the page
+function requestHistory() {
+    let request = new UrlFormData()
+        .append("request", "query")
+        .append("limit", historyPageSize);
+
+    if (oldestSequence !== undefined) {
+        request.append("before", oldestSequence);
+    }
+
+    socket.send(request.toString());
+}
+
+//Lists the journal segments saved on the robot in the journal select
+function loadJournalIndex() {
+    fetch("/log/journal", {cache: "no-store"})
+        .then(response => response.ok ? response.json() : undefined)
+        .then(index => {
+            if (index === undefined) {
+                return;
+            }
+
+            journalLevels = index.levels;
+
+            let select = document.getElementById("journalSelect");
+
+            //Keep the placeholder option, and list the newest segments first
+            while (select.options.length > 1) {
+                select.remove(1);
+            }
+            for (let segment of index.segments.reverse()) {
+                let option = document.createElement("option");
+                option.value = segment.name;
+                option.text = new Date(segment.time).toLocaleString() + " (" + segment.records + ")";
+                select.add(option);
+            }
+        })
+        .catch(() => {
+        });
+}
+
+//Replaces the lines on the page with the messages in the selected journal segment,
+//the segment is read a chunk at a time with range requests so large segments can be streamed
+async function loadJournalSegment() {
+    let select = document.getElementById("journalSelect");
+    let name = select.value;
+
+    if (name === "") {
+        return;
+    }
+
+    clearLog();
+
+    let textArea = document.getElementById("textArea");
+    let decoder = new TextDecoder();
+
+    //Bytes of a record that was cut off at the end of the last chunk
+    let pending = new Uint8Array(0);
+
+    //Skip the 32 byte segment header
+    let position = 32;
+
+    while (true) {
+        let response = await fetch("/log/journal/" + name, {
+            headers: {"Range": "bytes=" + position + "-" + (position + journalChunkSize - 1)}
+        });
+
+        //416 means there is nothing past the position
+        if (response.status !== 206) {
+            break;
+        }
+
+        let chunk = new Uint8Array(await response.arrayBuffer());
+        position += chunk.length;
+
+        let bytes = new Uint8Array(pending.length + chunk.length);
+        bytes.set(pending);
+        bytes.set(chunk, pending.length);
+
+        //Each record is an int message length, a byte level, a long time, and the utf-8 message
+        let view = new DataView(bytes.buffer);
+        let offset = 0;
+        while (offset + 13 <= bytes.length) {
+            let length = view.getInt32(offset);
+
+            if (offset + 13 + length > bytes.length) {
+                break;
+            }
+
+            let level = journalLevels[view.getInt8(offset + 4)];
+            let message = decoder.decode(bytes.subarray(offset + 13, offset + 13 + length));
+
+            let div = createLine(level + "MESSAGE:" + message);
+            if (div !== undefined) {
+                textArea.appendChild(div);
+            }
+
+            offset += 13 + length;
+        }
+
+        pending = bytes.slice(offset);
+
+        if (chunk.length < journalChunkSize) {
+            break;
+        }
+    }
+
+    searchUpdate();
+}
+
 //Called on page load to configure the page using values from localStorage
 function setup() {
     if (localStorage['autoscrollCheckbox'] !== undefined) {
@@ -228,18 +392,24 @@ function setup() {
         //If the showMatchingCheckbox is not undefined, use it to set whether the showMatching checkbox will start checked
         document.getElementById("showMatchingCheckbox").checked = (localStorage['showMatchingCheckbox'] === "true");
     }
+
+    loadJournalIndex();
 }
 
 //Code to create, maintain, and reopen a connection with the server in the robot code
 function connect() {
 
-    //Create a new websocket with the same host as the page and the page port plus 1 and path "/log"
+    //Create a new websocket with the same host and port as the page and path "/log"
     //to connect with the server in the robot code
-    socket = new WebSocket("ws://" + window.location.hostname + ":" + (parseInt(window.location.port) + 1) + "/log");
+    socket = new WebSocket("ws://" + window.location.host + "/log");
 
     //Called when the connection opens
     socket.onopen = function () {
 
+        //Fill an empty page with the most recent messages the robot logged before it connected
+        if (document.getElementById("textArea").children.length === 0) {
+            requestHistory();
+        }
     };
 
     //Called when the connection closes
@@ -262,65 +432,71 @@ function connect() {
             case "log":
                 //If message response type is log, put the lines sent into the textArea
 
-                //Get log messages from the UrlFormData
-                let rawMessages = messageData.get("messages");
-
-                //Split each message
-                let messages = rawMessages.split("TYPE:");
+                //The first live messages mark where the history before them starts
+                if (oldestSequence === undefined) {
+                    oldestSequence = messageData.get("first");
+                }
 
                 //Get the textArea from the html page
                 let textArea = document.getElementById("textArea");
 
                 //Loop through all of the messages
-                for (let rawMessage of messages) {
+                for (let rawMessage of messageData.get("messages").split("TYPE:")) {
+                    let div = createLine(rawMessage);
+
+                    //Add the div with the message to the textArea
+                    if (div !== undefined) {
+                        textArea.appendChild(div);
+                    }
+                }
 
-                    //Split the raw message data into the type and message
-                    let messageParts = rawMessage.split("MESSAGE:");
+                if (document.getElementById("autoscrollCheckbox").checked) {
+                    //If the autoscroll checkbox is checked scroll the textArea to the bottom
+                    textArea.scrollTop = textArea.scrollHeight;
+                }
 
-                    //Get the type and message from the message parts
-                    let type = messageParts[0];
-                    let message = messageParts[1];
+                //Update the search with the new messages
+                searchUpdate();
+                break;
+            case "log_page": {
+                //If message response type is log_page, put the older lines sent above the lines on the page
 
-                    //If this message isn't correctly formatted skip it
-                    if (type === undefined || message === undefined) {
-                        continue;
-                    }
+                let textArea = document.getElementById("textArea");
 
-                    //Create a dive for the log message
-                    let div = document.createElement("DIV");
+                //Keep the lines that were in view in place
+                let scrollHeight = textArea.scrollHeight;
 
-                    //Set the id of the div to the message,
-                    //so that an unmodified version of the message can be accessed for searching later
-                    div.id = message;
+                let firstLine = textArea.firstChild;
 
-                    //Add the textLine css class to the div so it is styled correctly
+                if (messageData.get("error") !== undefined) {
+                    //If the query couldn't be answered, show why above the lines on the page
+                    let div = document.createElement("div");
                     div.classList.add("textLine");
+                    div.classList.add("errorLine");
+                    div.innerText = "Log query failed: " + messageData.get("error");
+                    textArea.insertBefore(div, firstLine);
+                }
+
+                for (let rawMessage of messageData.get("messages").split("TYPE:")) {
+                    let div = createLine(rawMessage);
 
-                    if (type === "INFO") {
-                        //If the message is an info message,
-                        //add the infoLine css class to the div so it is styled correctly
-                        div.classList.add("infoLine");
-                    } else if (type === "ERROR") {
-                        //If the message is an error message,
-                        //add the errorLine css class to the div so it is styled correctly
-                        div.classList.add("errorLine");
+                    if (div !== undefined) {
+                        textArea.insertBefore(div, firstLine);
                     }
+                }
 
-                    //Set the innerText of the div to the message, so that it is displayed on the page
-                    div.innerText = message;
+                textArea.scrollTop += textArea.scrollHeight - scrollHeight;
 
-                    //Add the div with the message to the textArea
-                    textArea.appendChild(div);
+                if (messageData.get("before") !== undefined) {
+                    oldestSequence = messageData.get("before");
                 }
 
-                if (document.getElementById("autoscrollCheckbox").checked) {
-                    //If the autoscroll checkbox is checked scroll the textArea to the bottom
-                    textArea.scrollTop = textArea.scrollHeight;
-                }
+                //Only allow asking for older messages if there are any
+                document.getElementById("olderButton").disabled = messageData.get("more") !== "true";
 
-                //Update the search with the new messages
                 searchUpdate();
                 break;
+            }
         }
     };
 }
@@ -348,10 +524,3 @@ document.addEventListener('keydown', function (event) {
 //Call connect to initiate a connection with the server in the robot code
 connect();
 
-//Check every second to confirm the websocket is still connected with the robot code
-setInterval(function () {
-    if (socket !== undefined) {
-        //If socket exists then send a keepalive to make sure the socket is still connected
-        socket.send("keepalive");
-    }
-}, 1000);
@@ -18,6 +18,13 @@ let blinking = false;
 //The current repeat count for the page blinking to indicate disconnecting from the robot code
 let repeat = 0;
 
+//The names of the match value ids defined by the server on the current connection
+let matchKeyNames = [];
+
+//The number of updates per second to ask the server for, the match page doesn't need every frame
+//Can be changed by opening the page with "?rate=" in the url
+const updateRate = new URLSearchParams(window.location.search).get("rate") || 20;
+
 //Call when a double click occurs any where on the page
 function chooseAuto() {
 
@@ -356,13 +363,20 @@ function blink() {
 //Code to create, maintain, and reopen a connection with the server in the robot code
 function connect() {
 
-    //Create a new websocket with the same host as the page and the page port plus 1 and path "/log"
+    //Create a new websocket with the same host and port as the page and path "/match"
     //to connect with the server in the robot code
-    socket = new WebSocket("ws://" + window.location.hostname + ":" + (parseInt(window.location.port) + 1) + "/match");
+    //Ask for interned keys so each value name is only sent once per connection
+    socket = new WebSocket("ws://" + window.location.host + "/match", "uacr-interned");
+
+    //Ids are only valid on the connection that defined them
+    matchKeyNames = [];
 
     //Called when the connection opens
     socket.onopen = function () {
 
+        //Tell the server how often to send match values
+        socket.send(new UrlFormData().append("request", "set_rate").append("rate", updateRate).toString());
+
         if (independent) {
             //If page is independent handle the blinking state
 
@@ -408,6 +422,16 @@ function connect() {
 
         //Case statement on the message response type
         switch (messageData.get("response")) {
+            case "match_define":
+                //If the message type is match_define, remember the name of each new id
+
+                //Each definition is an id and a name
+                for (let definition of messageData.get("keys").split("~$#$~")) {
+                    let definitionParts = definition.split("*$#$*");
+
+                    matchKeyNames[parseInt(definitionParts[0])] = definitionParts[1];
+                }
+                break;
             case "match_values":
                 //If the message type is match_values, display the values on the html page
 
@@ -420,6 +444,11 @@ function connect() {
                     //Split up the value string into its parts
                     let parts = v.split("*$#$*");
 
+                    if (socket.protocol === "uacr-interned") {
+                        //If keys are interned replace the id with its name
+                        parts[1] = matchKeyNames[parseInt(parts[1])];
+                    }
+
                     if (parts[0] === "value") {
                         //If the value type is a display value then call setValue with the data
                         setValue(parts[1], parts[2])
@@ -491,6 +520,11 @@ function connect() {
                 }
                 break;
 
+            case "replay_status":
+                //If message response type is replay_status, the robot code is replaying a recorded session
+                updateReplay(socket, messageData);
+                break;
+
             case "auto_data":
                 //If message response type is auto_data set the choices in the the selectors of the auto chooser
                 //to the choices in the message data
@@ -541,14 +575,6 @@ function connect() {
 //Call connect to initiate a connection with the server in the robot code
 connect();
 
-//Check every second to confirm the websocket is still connected with the robot code
-setInterval(function () {
-    if (socket !== undefined) {
-        //If socket exists then send a keepalive to make sure the socket is still connected
-        socket.send("keepalive");
-    }
-}, 1000);
-
 if (independent) {
     //If the page is independent setup blinking
 
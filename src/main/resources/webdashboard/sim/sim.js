@@ -17,6 +17,9 @@ let robotAngle = 0;
 
 let lastValues = {}
 
+//The names of the value ids defined by the server on the current connection
+let keyNames = [];
+
 let frMovement = new Vector(0, 0);
 let flMovement = new Vector(0, 0);
 let blMovement = new Vector(0, 0);
@@ -165,13 +168,18 @@ function sendValue(name, value, selected) {
 //Code to create, maintain, and reopen a connection with the server in the robot code
 function connect() {
 
-    //Create a new websocket with the same host as the page and the page port plus 1 and path "/log"
+    //Create a new websocket with the same host and port as the page and path "/values"
     //to connect with the server in the robot code
-    socket = new WebSocket("ws://" + window.location.hostname + ":" + (parseInt(window.location.port) + 1) + "/values");
+    //Ask for interned keys so each value name is only sent once per connection
+    socket = new WebSocket("ws://" + window.location.host + "/values", "uacr-interned");
+
+    //Ids are only valid on the connection that defined them
+    keyNames = [];
 
     //Called when the connection opens
     socket.onopen = function () {
-
+        //Only the drivetrain outputs are drawn so don't receive any other values
+        socket.send(new UrlFormData().append("request", "subscribe").append("keys", "opn_drivetrain_*").toString());
     };
 
     //Called when the connection closes
@@ -191,6 +199,14 @@ function connect() {
 
         //Case statement on the message response type
         switch (messageData.get("response")) {
+            case "define":
+
+                for(let definition of messageData.get("keys").split("~")) {
+                    let definitionParts = definition.split("*");
+
+                    keyNames[parseInt(definitionParts[0])] = definitionParts[1];
+                }
+                break;
             case "values":
 
                 let values = messageData.get("values").split("~");
@@ -198,6 +214,10 @@ function connect() {
                 for(let value of values) {
                     let valueData = value.split("*");
 
+                    if(socket.protocol === "uacr-interned") {
+                        valueData[1] = keyNames[parseInt(valueData[1])];
+                    }
+
                     if(valueData[1] === "opn_drivetrain_front_right_speed") {
                         frRequestedMovement = new Vector(parseFloat(valueData[2]), frRequestedMovement.angle);
                     }
@@ -239,14 +259,6 @@ function connect() {
 //Call connect to initiate a connection with the server in the robot code
 connect();
 
-//Check every second to confirm the websocket is still connected with the robot code
-setInterval(() => {
-    if (socket !== undefined) {
-        //If socket exists then send a keepalive to make sure the socket is still connected
-        socket.send("keepalive");
-    }
-}, 1000);
-
 setInterval(() => {
     frMovement = updateModule(frMovement, frRequestedMovement);
     flMovement = updateModule(flMovement, flRequestedMovement);
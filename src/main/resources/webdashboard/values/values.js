@@ -28,6 +28,18 @@ let valueMenuOpen = false;
 //A map of value names to value popouts
 let popoutMap = new Map();
 
+//The filter typed above the values table, an empty filter shows every value
+let valueFilter = localStorage['value_filter'] || "";
+
+//The "~" separated keys the page last subscribed to, so the subscription is only sent when it changes
+let subscribedKeys = "";
+
+//Key names sent by the robot code in the binary values protocol, indexed by key id
+let binaryKeyNames = [];
+
+//Decodes UTF-8 text in binary values messages
+let binaryTextDecoder = new TextDecoder();
+
 //Tracks the current driver and operator gamepads
 let driverGamepadIndex = -1;
 let operatorGamepadIndex = -1;
@@ -305,6 +317,9 @@ function toggleGraph() {
 
             //Write the new graph values into sessionStorage so the graph will show the changes
             sessionStorage['graph_values'] = JSON.stringify(graphValues);
+
+            //The vector is no longer needed unless it matches the filter
+            updateSubscription();
         }
     } else if (valueUpdateType !== 'string') {
         //If the value is a type that can be graphed over time (numeric or boolean)
@@ -336,6 +351,9 @@ function toggleGraph() {
 
         //Write the new graph values into sessionStorage so the graph will show the changes
         sessionStorage['graph_values'] = JSON.stringify(graphValues);
+
+        //Graphed values are sent even if they don't match the filter
+        updateSubscription();
     }
 }
 
@@ -399,6 +417,9 @@ function closeVectorGraphingMenu(graphVector) {
         //Write the new graph values into sessionStorage so the graph will show the changes
         sessionStorage['graph_values'] = JSON.stringify(graphValues);
 
+        //Graphed vectors are sent even if they don't match the filter
+        updateSubscription();
+
         //Sends a request for all robot code values so the value is graphed immediately even if it doesn't change
         socket.send(new UrlFormData().append("request", "all_values").toString());
     }
@@ -536,8 +557,75 @@ function storePopouts() {
 
     //Write the popout string into localStorage
     localStorage["popouts"] = popouts.join("*");
+
+    //Popped out values are sent even if they don't match the filter
+    updateSubscription();
+}
+
+//Called when the filter above the values table is changed
+function onFilterChange() {
+    valueFilter = document.getElementById("valueFilter").value.trim();
+    localStorage['value_filter'] = valueFilter;
+
+    //Hide the rows that don't match the new filter
+    for (let row of document.getElementById("valueTableBody").rows) {
+        row.style.display = matchesFilter(row.cells[0].innerText) ? "" : "none";
+    }
+
+    updateSubscription();
+}
+
+//The filter as a glob pattern, a filter without a "*" matches every name that contains it
+function getFilterPattern() {
+    return valueFilter.includes("*") ? valueFilter : "*" + valueFilter + "*";
+}
+
+//Whether the name matches the filter the same way the robot code matches subscription patterns
+function matchesFilter(name) {
+    if (valueFilter === "") {
+        return true;
+    }
+
+    let regex = getFilterPattern().split("*").map(part => part.replace(/[.*+?^${}()|[\]\\]/g, "\\$&")).join(".*");
+
+    return new RegExp("^" + regex + "$").test(name);
+}
+
+//Subscribes to the values matching the filter, the graphed values, the popped out values and the "gr_" graph datasets,
+//so the robot code only sends the values the page shows
+function updateSubscription() {
+    let keys = [valueFilter === "" ? "*" : getFilterPattern(), "gr_*"];
+
+    let graphValues = JSON.parse(sessionStorage['graph_values'] || "{}");
+    for (let name in graphValues) {
+        if (graphValues[name] !== undefined && graphValues[name] !== null) {
+            keys.push(name);
+        }
+    }
+
+    for (let name of popoutMap.keys()) {
+        keys.push(name);
+    }
+
+    keys = keys.join("~");
+
+    if (keys === subscribedKeys || socket === undefined || socket.readyState !== WebSocket.OPEN) {
+        return;
+    }
+
+    subscribedKeys = keys;
+
+    //The subscription replaces the last one, the robot code then sends every current value it covers
+    socket.send(new UrlFormData().append("request", "set_subscription").append("keys", keys).toString());
 }
 
+//The graph page removes values from graph_values when they are taken off the graph
+window.addEventListener("storage", function (event) {
+    if (event.key === "graph_values") {
+        updateSubscription();
+    }
+});
+
 //Makes an html element draggable
 //"element" the element to make draggable
 function makeDraggable(element) {
@@ -652,13 +740,22 @@ function sendUpdateValue(type, name, value) {
 //Code to create, maintain, and reopen a connection with the server in the robot code
 function connect() {
 
-    //Create a new websocket with the same host as the page and the page port plus 1 and path "/log"
-    //to connect with the server in the robot code
-    socket = new WebSocket("ws://" + window.location.hostname + ":" + (parseInt(window.location.port) + 1) + "/values");
+    //Create a new websocket with the same host and port as the page and path "/values"
+    //to connect with the server in the robot code, asking for the smaller and faster binary values protocol
+    socket = new WebSocket("ws://" + window.location.host + "/values", "uacr-values-binary");
+
+    //Receive binary messages as ArrayBuffers so they can be read with a DataView
+    socket.binaryType = "arraybuffer";
+
+    //Key names are sent once per connection so forget the ones from any previous connection
+    binaryKeyNames = [];
 
     //Called when the connection opens
     socket.onopen = function () {
 
+        //A new connection is sent every value until the page subscribes to the ones it shows
+        subscribedKeys = "";
+        updateSubscription();
     };
 
     //Called when the connection closes
@@ -673,6 +770,12 @@ function connect() {
     //Called when a message is received over the connection
     socket.onmessage = function (message) {
 
+        if (message.data instanceof ArrayBuffer) {
+            //If the message is binary it is a values message in the binary values protocol
+            updateValues(decodeBinaryValues(message.data));
+            return;
+        }
+
         //Turn message data into UrlFormData
         let messageData = new UrlFormData(message.data);
 
@@ -681,204 +784,308 @@ function connect() {
             case "values":
                 //If message response type is values, update the values in the value table
 
-                //Get the children of the value table body
-                let children = document.getElementById("valueTableBody").children;
+                //Split the values data into each value and each value into its parts,
+                //there is usually one part unless the value is a vector
+                updateValues(messageData.get("values").split("~").map(v => v.split("*")));
+                break;
+            case "replay_status":
+                //If message response type is replay_status, the robot code is replaying a recorded session
+                updateReplay(socket, messageData);
+                break;
+        }
+    };
+}
+
+//Updates the value table, graph values and popouts with values sent from the robot code
+//"values" is an array of values, each an array of the type, the name, then the parts of the value
+function updateValues(values) {
+
+    //Get the children of the value table body
+    let children = document.getElementById("valueTableBody").children;
+
+    //Get the graph values from session storage
+    let graphValues = JSON.parse(sessionStorage['graph_values']);
+
+    loop: for (let parts of values) {
+
+        //Create a value to be displayed,
+        //this allows from vectors to be displayed with each value on a new line.
+        //Add all the parts except the the first 2 as they are the type and name not the value,
+        //sort the parts alphabetically, then join them together with a new line between each part
+        let value = parts.slice(2, parts.length).sort().join("\n");
+
+        if (parts[1] === "ips_selected_auto") {
+            //If the name of the value is ips_selected_auto then add it to sessionStorage,
+            //so the auto button can display the auto selected in the robot code
+            sessionStorage[parts[1]] = parts[2];
+        }
+
+        if (parts[0] === "vector" && parts[1].startsWith("gr_")) {
+            //If the value is a vector and it starts with the graph dataset tag "gr_",
+            //then extract the data and send it to the graph page and don't add it to the values table
+
+            //Create an array for the new graph dataset
+            let vectorGraphValues = [];
+
+            //Split the value into each data point
+            let valueParts = value.split("\n");
+
+            //Loop through each of the values in the array
+            for (let v = 0; v < valueParts.length; v += 2) {
+
+                //Add each of the x,y points to the graph dataset
+                vectorGraphValues.push({
+                    x: valueParts[v].split(": ")[1],
+                    y: valueParts[v + 1].split(": ")[1]
+                });
+            }
 
-                //Get an array of the values data
-                let values = messageData.get("values").split("~");
+            //Set the data in graphValues corresponding to this value
+            graphValues[parts[1]] = {
+                //Set the value to the dataset
+                value: vectorGraphValues,
 
-                //Get the graph values from session storage
-                let graphValues = JSON.parse(sessionStorage['graph_values']);
-
-                loop: for (let v of values) {
-
-                    //Get the parts of the value this usually will be one unless the value is a vector
-                    let parts = v.split("*");
-
-                    //Create a value to be displayed,
-                    //this allows from vectors to be displayed with each value on a new line.
-                    //Add all the parts except the the first 2 as they are the type and name not the value,
-                    //sort the parts alphabetically, then join them together with a new line between each part
-                    let value = parts.slice(2, parts.length).sort().join("\n");
-
-                    if (parts[1] === "ips_selected_auto") {
-                        //If the name of the value is ips_selected_auto then add it to sessionStorage,
-                        //so the auto button can display the auto selected in the robot code
-                        sessionStorage[parts[1]] = parts[2];
-                    }
-
-                    if (parts[0] === "vector" && parts[1].startsWith("gr_")) {
-                        //If the value is a vector and it starts with the graph dataset tag "gr_",
-                        //then extract the data and send it to the graph page and don't add it to the values table
-
-                        //Create an array for the new graph dataset
-                        let vectorGraphValues = [];
-
-                        //Split the value into each data point
-                        let valueParts = value.split("\n");
-
-                        //Loop through each of the values in the array
-                        for (let v = 0; v < valueParts.length; v += 2) {
-
-                            //Add each of the x,y points to the graph dataset
-                            vectorGraphValues.push({
-                                x: valueParts[v].split(": ")[1],
-                                y: valueParts[v + 1].split(": ")[1]
-                            });
-                        }
-
-                        //Set the data in graphValues corresponding to this value
-                        graphValues[parts[1]] = {
-                            //Set the value to the dataset
-                            value: vectorGraphValues,
-
-                            //Set updated to true so the graphing code knows this is new data and should be graphed
-                            updated: true
-                        };
-
-                        //Move onto the next value so the graph dataset isn't added to the values table
-                        continue;
-                    }
+                //Set updated to true so the graphing code knows this is new data and should be graphed
+                updated: true
+            };
 
-                    if (graphValues[parts[1]] !== undefined) {
-                        //If the value is being graph update the value
+            //Move onto the next value so the graph dataset isn't added to the values table
+            continue;
+        }
 
-                        if (parts[0] === "vector") {
-                            //If the value is a vector
+        if (graphValues[parts[1]] !== undefined) {
+            //If the value is being graph update the value
 
-                            //Create a new map for the data point
-                            let vectorGraphValues = {};
+            if (parts[0] === "vector") {
+                //If the value is a vector
 
-                            //Get the parts of the vector
-                            let vectorValues = value.split("\n");
+                //Create a new map for the data point
+                let vectorGraphValues = {};
 
-                            //Loop through the parts vector
-                            for (let v of vectorValues) {
+                //Get the parts of the vector
+                let vectorValues = value.split("\n");
 
-                                //Split each part of the vector into a name and value
-                                let vectorValueParts = v.split(": ");
+                //Loop through the parts vector
+                for (let v of vectorValues) {
 
-                                //Add the name and value to the map
-                                vectorGraphValues[vectorValueParts[0]] = vectorValueParts[1];
-                            }
+                    //Split each part of the vector into a name and value
+                    let vectorValueParts = v.split(": ");
 
-                            //Get the x and y dataset names from the graph values
-                            let xName = graphValues[parts[1]].x;
-                            let yName = graphValues[parts[1]].y;
+                    //Add the name and value to the map
+                    vectorGraphValues[vectorValueParts[0]] = vectorValueParts[1];
+                }
 
-                            //Get x and y values from the map using the dataset names
-                            let xValue = vectorGraphValues[xName];
-                            let yValue = vectorGraphValues[yName];
+                //Get the x and y dataset names from the graph values
+                let xName = graphValues[parts[1]].x;
+                let yName = graphValues[parts[1]].y;
 
-                            //Set the graph values value to x,y so the point will be graphed
-                            if (xValue === undefined) {
-                                graphValues[parts[1]].value = yValue;
-                            } else {
-                                graphValues[parts[1]].value = xValue + "," + yValue;
-                            }
-                        } else if (parts[0] === "boolean") {
-                            //If the value is a boolean, set its value in graphValues 0 for false 1 for true
-                            graphValues[parts[1]].value = (parts[2] === "true" ? "1" : "0");
-                        } else if (parts[0] === "output") {
-                            //If the value is an output
-
-                            if (parts[2] === "false" || parts[2] === "true") {
-                                //If the output is a boolean, set its value in graphValues 0 for false 1 for true
-                                graphValues[parts[1]].value = (parts[2] === "true" ? "1" : "0");
-                            } else {
-                                //If the output is a boolean, set its value in graphValues to the value
-                                graphValues[parts[1]].value = parts[2];
-                            }
-                        } else {
-                            //If the output is a numeric, set its value in graphValues to the value
-                            graphValues[parts[1]].value = parts[2];
-                        }
-
-                        //Set updated to true so the graph page knows it is a new value and should be graphed
-                        graphValues[parts[1]].updated = true;
-                    }
-
-                    if (popoutMap.has(parts[1])) {
-                        //If the value has a popout update the value in the popout's display
-                        popoutMap.get(parts[1]).innerText = parts[1] + ":\n" + value;
-                    }
-
-                    //Loop through each of the rows in the values table
-                    for (let child of children) {
-
-                        if (child.cells[0].innerText === parts[1]) {
-                            //If name cell matches the name of the value
-
-                            if (child.cells[1].innerText !== value) {
-                                //If the value has changed
-
-                                //Update the value in the value cell
-                                child.cells[1].innerText = value;
-
-                                child.cells[0].onclick = function () {
-                                    //Update the onclick handler for the new value
-                                    openUpdateValue(parts[0], parts[1], value);
-                                };
-                            }
-
-                            //Since this value has been updated move onto the next value
-                            continue loop;
-                        }
-                    }
-
-                    //The value isn't yet in the display table
-
-                    //Add the name to the array of table values
-                    tableValues.push(parts[1]);
+                //Get x and y values from the map using the dataset names
+                let xValue = vectorGraphValues[xName];
+                let yValue = vectorGraphValues[yName];
 
-                    //Sort the array of table values in alphabetical order
-                    tableValues.sort();
-
-                    //Create a new row at the correct location in the table so it is in alphabetical order
-                    let r = document.getElementById("valueTableBody").insertRow(tableValues.indexOf(parts[1]));
-
-                    //Create the name cell
-                    let cell = r.insertCell(0);
+                //Set the graph values value to x,y so the point will be graphed
+                if (xValue === undefined) {
+                    graphValues[parts[1]].value = yValue;
+                } else {
+                    graphValues[parts[1]].value = xValue + "," + yValue;
+                }
+            } else if (parts[0] === "boolean") {
+                //If the value is a boolean, set its value in graphValues 0 for false 1 for true
+                graphValues[parts[1]].value = (parts[2] === "true" ? "1" : "0");
+            } else if (parts[0] === "output") {
+                //If the value is an output
+
+                if (parts[2] === "false" || parts[2] === "true") {
+                    //If the output is a boolean, set its value in graphValues 0 for false 1 for true
+                    graphValues[parts[1]].value = (parts[2] === "true" ? "1" : "0");
+                } else {
+                    //If the output is a boolean, set its value in graphValues to the value
+                    graphValues[parts[1]].value = parts[2];
+                }
+            } else {
+                //If the output is a numeric, set its value in graphValues to the value
+                graphValues[parts[1]].value = parts[2];
+            }
 
-                    //Set the text of the cell to the name of the value
-                    cell.innerHTML = parts[1];
+            //Set updated to true so the graph page knows it is a new value and should be graphed
+            graphValues[parts[1]].updated = true;
+        }
 
-                    cell.onclick = function () {
-                        //Add an onclick handler so the value menu opens when the cell is clicked
+        if (popoutMap.has(parts[1])) {
+            //If the value has a popout update the value in the popout's display
+            popoutMap.get(parts[1]).innerText = parts[1] + ":\n" + value;
+        }
+
+        //Loop through each of the rows in the values table
+        for (let child of children) {
+
+            if (child.cells[0].innerText === parts[1]) {
+                //If name cell matches the name of the value
+
+                if (child.cells[1].innerText !== value) {
+                    //If the value has changed
+
+                    //Update the value in the value cell
+                    child.cells[1].innerText = value;
+
+                    child.cells[0].onclick = function () {
+                        //Update the onclick handler for the new value
                         openUpdateValue(parts[0], parts[1], value);
                     };
+                }
 
-                    //Create the value cell
-                    let valueCell = r.insertCell(1);
+                //Since this value has been updated move onto the next value
+                continue loop;
+            }
+        }
 
-                    //Set the max width so text will wrap if it is too large
-                    valueCell.style.maxWidth = "10vw";
+        //The value isn't yet in the display table
 
-                    //Set the text of the cell to the value
-                    valueCell.innerHTML = value;
-                }
+        //Add the name to the array of table values
+        tableValues.push(parts[1]);
 
-                //Update the graph_values in sessionStorage so the graph will update with the new data
-                sessionStorage['graph_values'] = JSON.stringify(graphValues);
+        //Sort the array of table values in alphabetical order
+        tableValues.sort();
 
-                //Update the values table header so it matches the the table body
-                document.getElementById('nameHeader').style.width = document.getElementById("valueTableBody").rows[0].cells[0].clientWidth + "px";
-                break;
+        //Create a new row at the correct location in the table so it is in alphabetical order
+        let r = document.getElementById("valueTableBody").insertRow(tableValues.indexOf(parts[1]));
+
+        //Create the name cell
+        let cell = r.insertCell(0);
+
+        //Set the text of the cell to the name of the value
+        cell.innerHTML = parts[1];
+
+        cell.onclick = function () {
+            //Add an onclick handler so the value menu opens when the cell is clicked
+            openUpdateValue(parts[0], parts[1], value);
+        };
+
+        //Create the value cell
+        let valueCell = r.insertCell(1);
+
+        //Set the max width so text will wrap if it is too large
+        valueCell.style.maxWidth = "10vw";
+
+        //Set the text of the cell to the value
+        valueCell.innerHTML = value;
+
+        //Values sent for a graph or popout are only shown in the table if they match the filter
+        if (!matchesFilter(parts[1])) {
+            r.style.display = "none";
         }
+    }
+
+    //Update the graph_values in sessionStorage so the graph will update with the new data
+    sessionStorage['graph_values'] = JSON.stringify(graphValues);
+
+    //Update the values table header so it matches the the table body
+    document.getElementById('nameHeader').style.width = document.getElementById("valueTableBody").rows[0].cells[0].clientWidth + "px";
+}
+
+//Decodes a binary values message into the same arrays of parts that the text values message is split into
+//Each record is a record type byte, a varint key id, then the value
+function decodeBinaryValues(buffer) {
+
+    //Views of the message for reading bytes and big endian doubles
+    let bytes = new Uint8Array(buffer);
+    let view = new DataView(buffer);
+
+    //Skip the message type byte
+    let offset = 1;
+
+    //Reads an unsigned varint, 7 bits per byte with the high bit set on all but the last byte
+    let readVarInt = function () {
+        let value = 0;
+        let shift = 0;
+        let b;
+        do {
+            b = bytes[offset++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b & 0x80);
+        return value;
+    };
+
+    //Reads a varint byte length followed by that many bytes of UTF-8 text
+    let readText = function () {
+        let length = readVarInt();
+        let text = binaryTextDecoder.decode(bytes.subarray(offset, offset + length));
+        offset += length;
+        return text;
+    };
+
+    //Reads a big endian double
+    let readDouble = function () {
+        let value = view.getFloat64(offset);
+        offset += 8;
+        return value;
     };
+
+    //The decoded values
+    let values = [];
+
+    while (offset < bytes.length) {
+
+        //Read the record type and the id of the key it is for
+        let type = bytes[offset++];
+        let id = readVarInt();
+        let name = binaryKeyNames[id];
+
+        switch (type) {
+            case 0:
+                //Define record, remember the key name for the id
+                binaryKeyNames[id] = readText();
+                break;
+            case 1:
+                //Numeric, formatted with 6 decimal places to match the text protocol
+                values.push(["numeric", name, readDouble().toFixed(6)]);
+                break;
+            case 2:
+                values.push(["boolean", name, bytes[offset++] === 1 ? "true" : "false"]);
+                break;
+            case 3:
+                values.push(["string", name, readText()]);
+                break;
+            case 4:
+                //Vector, a count followed by that many name and double pairs
+                let parts = ["vector", name];
+                let count = readVarInt();
+                for (let i = 0; i < count; i++) {
+                    let vectorName = readText();
+                    parts.push(vectorName + ": " + formatDouble(readDouble()));
+                }
+                values.push(parts);
+                break;
+            case 5:
+                values.push(["output", name, formatDouble(readDouble())]);
+                break;
+            case 6:
+                values.push(["output", name, bytes[offset++] === 1 ? "true" : "false"]);
+                break;
+            case 7:
+                values.push(["output", name, readText()]);
+                break;
+        }
+    }
+
+    return values;
+}
+
+//Formats a double the way java does so binary values display the same as text values
+function formatDouble(value) {
+    if (Number.isInteger(value) && Math.abs(value) < 1e7) {
+        return value.toFixed(1);
+    }
+    return String(value);
 }
 
+//Show the filter from the last time the page was open
+document.getElementById("valueFilter").value = valueFilter;
+
 //Call connect to initiate a connection with the server in the robot code
 connect();
 
-//Check every second to confirm the websocket is still connected with the robot code
-setInterval(function () {
-    if (socket !== undefined) {
-        //If socket exists then send a keepalive to make sure the socket is still connected
-        socket.send("keepalive");
-    }
-}, 1000);
-
 //Added a new empty json object to to the sessionStorage graph_values so that it can be filled later
 sessionStorage['graph_values'] = JSON.stringify({});
 
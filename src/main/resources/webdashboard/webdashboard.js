@@ -101,9 +101,9 @@ function setVisibility(element, visible) {
 //Code to create, maintain, and reopen a connection with the server in the robot code
 function connect() {
 
-    //Create a new websocket with the same host as the page and the page port plus 1 and path "/webdashboard"
+    //Create a new websocket with the same host and port as the page and path "/webdashboard"
     //to connect with the server in the robot code
-    socket = new WebSocket("ws://" + window.location.hostname + ":" + (parseInt(window.location.port) + 1) + "/webdashboard");
+    socket = new WebSocket("ws://" + window.location.host + "/webdashboard");
 
     //Called when the connection opens
     socket.onopen = function () {